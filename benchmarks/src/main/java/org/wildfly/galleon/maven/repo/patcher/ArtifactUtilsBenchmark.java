@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Conversions between artifact-versions.properties values and repository
+ * paths, and parsing of artifact-versions.properties.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArtifactUtilsBenchmark {
+
+    @Param({"1000", "20000", "200000"})
+    public int artifacts;
+
+    private String[] versions;
+    private Path[] paths;
+    private String properties;
+
+    @Setup
+    public void setup() {
+        versions = new String[artifacts];
+        paths = new Path[artifacts];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < artifacts; i++) {
+            String groupId = "org.benchmark.group" + i % 100;
+            String artifactId = "artifact-" + i;
+            // Some artifacts have a classifier, as the native ones.
+            String classifier = i % 10 == 0 ? "linux-x86_64" : "";
+            versions[i] = groupId + ":" + artifactId + ":1." + i % 10 + ".0.Final-redhat-00001:" + classifier + ":jar";
+            paths[i] = ArtifactUtils.convertToPath(versions[i]);
+            builder.append(groupId).append(':').append(artifactId).append('=').append(versions[i]).append('\n');
+        }
+        properties = builder.toString();
+    }
+
+    @Benchmark
+    public void pathToArtifactVersion(Blackhole blackhole) {
+        for (Path path : paths) {
+            blackhole.consume(ArtifactUtils.pathToArtifactVersion(path));
+        }
+    }
+
+    @Benchmark
+    public void convertToPath(Blackhole blackhole) {
+        for (String version : versions) {
+            blackhole.consume(ArtifactUtils.convertToPath(version));
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> readProperties() throws Exception {
+        return ArtifactUtils.readProperties(new BufferedReader(new StringReader(properties)), "benchmark");
+    }
+
+    @Benchmark
+    public Map<String, ArtifactCoordinate> readArtifactVersions() throws Exception {
+        return ArtifactUtils.readArtifactVersions(new BufferedReader(new StringReader(properties)), "benchmark");
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.jboss.galleon.util.IoUtils;
+
+/**
+ * A generated repository and its maven repo patch, written in a temp
+ * directory.
+ *
+ * @author jdenise
+ */
+final class BenchmarkRepository implements Closeable {
+
+    // Jar, pom, their checksums and the version directory.
+    private static final int ENTRIES_PER_ARTIFACT = 7;
+    private static final int JAR_SIZE = 1024;
+
+    private final Path dir;
+    private final Path repository;
+    private final Path patch;
+    private final RepositoryGenerator generator;
+
+    /**
+     * @param entries The approximate number of entries of the repository.
+     * @param featurePacks The number of feature-packs.
+     * @param patchSize The number of patched artifacts.
+     * @param jarSize The average size of the jars and natives.
+     */
+    private BenchmarkRepository(int entries, int featurePacks, int patchSize, int jarSize) throws Exception {
+        dir = Files.createTempDirectory("patcher-benchmark");
+        repository = dir.resolve("repository.zip");
+        patch = dir.resolve("patch.zip");
+        generator = new RepositoryGenerator().
+                setArtifacts(Math.max(featurePacks, entries / ENTRIES_PER_ARTIFACT)).
+                setFeaturePacks(featurePacks).
+                setPatchSize(patchSize).
+                setJarSize(jarSize);
+        generator.generate(repository, patch);
+    }
+
+    static BenchmarkRepository create(int entries, int featurePacks, int patchSize) throws Exception {
+        return new BenchmarkRepository(entries, featurePacks, patchSize, JAR_SIZE);
+    }
+
+    static BenchmarkRepository create(int entries, int featurePacks, int patchSize, int jarSize) throws Exception {
+        return new BenchmarkRepository(entries, featurePacks, patchSize, jarSize);
+    }
+
+    Path getRepository() {
+        return repository;
+    }
+
+    Path getPatch() {
+        return patch;
+    }
+
+    Path getDir() {
+        return dir;
+    }
+
+    /**
+     * @return The artifact-versions.properties entries of the patched
+     * artifacts, with their original version.
+     */
+    Map<String, String> getOriginalPatchedArtifacts() {
+        return generator.getOriginalPatchedArtifacts();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IoUtils.recursiveDelete(dir);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Removal of the patched artifacts from a zipped repository. The zip and its
+ * index are shared by all the invocations, each invocation starts from a
+ * fresh repository view.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeleteArtifactsBenchmark {
+
+    @Param({"1000", "20000", "200000"})
+    public int entries;
+
+    @Param({"1", "100", "5000"})
+    public int patchSize;
+
+    private BenchmarkRepository fixture;
+    private ZipFile zipFile;
+    private RepositoryIndex index;
+    private PathTrie toRemove;
+    private PatcherOptions options;
+    private ZippedMavenRepository repository;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        fixture = BenchmarkRepository.create(entries, 1, patchSize);
+        zipFile = new ZipFile(fixture.getRepository().toFile());
+        index = RepositoryIndex.build(zipFile, fixture.getRepository());
+        toRemove = new PathTrie();
+        for (String artifact : fixture.getOriginalPatchedArtifacts().values()) {
+            toRemove.add(ArtifactUtils.convertToPath(artifact));
+        }
+        options = new PatcherOptions().setStreaming(true);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        repository = ZippedMavenRepository.newInstance(ZipArchive.of(zipFile), index, options, () -> {
+        });
+    }
+
+    @Benchmark
+    public ZippedMavenRepository deleteArtifacts() throws Exception {
+        Patcher.deleteArtifacts(repository, toRemove, new Log());
+        return repository;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        zipFile.close();
+        fixture.close();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A complete patch run: read both zips, scan the feature-packs, create the
+ * galleon patches and write the generated repository.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final PatcherListener QUIET = new PatcherListener() {
+    };
+
+    @Param({"1000", "20000", "200000"})
+    public int entries;
+
+    @Param({"1", "20"})
+    public int featurePacks;
+
+    @Param({"1", "100", "5000"})
+    public int patchSize;
+
+    @Param({"true", "false"})
+    public boolean streaming;
+
+    private BenchmarkRepository fixture;
+    private Path output;
+    private Path workDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        fixture = BenchmarkRepository.create(entries, featurePacks, patchSize);
+        output = fixture.getDir().resolve("output.zip");
+        workDir = fixture.getDir().resolve("work");
+    }
+
+    @Benchmark
+    public PatchResult patch() throws Exception {
+        return Patcher.builder().
+                setOriginalRepository(fixture.getRepository()).
+                setRepositoryPatch(fixture.getPatch()).
+                setOutput(output).
+                setStreaming(streaming).
+                setWorkDir(workDir).
+                setListener(QUIET).
+                build().patch();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jboss.galleon.universe.FeaturePackLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scan of the artifact-versions of a feature-pack against the patched
+ * artifacts.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"1000", "20000", "200000"})
+    public int artifacts;
+
+    @Param({"1", "100", "5000"})
+    public int patchSize;
+
+    private FeaturePackMetadata metadata;
+    private Map<String, ArtifactCoordinate> newArtifactsMap;
+
+    @Setup
+    public void setup() {
+        Map<String, ArtifactCoordinate> versionProps = new HashMap<>();
+        newArtifactsMap = new HashMap<>();
+        for (int i = 0; i < artifacts; i++) {
+            String key = "org.benchmark.group" + i % 100 + ":artifact-" + i;
+            versionProps.put(key, ArtifactCoordinate.parse(key + ":1." + i % 10 + ".0.Final-redhat-00001::jar"));
+            if (i < patchSize) {
+                newArtifactsMap.put(key, ArtifactCoordinate.parse(key + ":1." + i % 10 + ".0.Final-redhat-00002::jar"));
+            }
+        }
+        FeaturePackLocation.FPID fpid = FeaturePackLocation.fromString(RepositoryGenerator.FP_GROUP_ID + ":fp:"
+                + RepositoryGenerator.FP_VERSION).getFPID();
+        metadata = new FeaturePackMetadata(fpid, false, versionProps);
+    }
+
+    @Benchmark
+    public ScannedFeaturePack scan() throws Exception {
+        return ScannedFeaturePack.scan(metadata.getVersionProps(), newArtifactsMap);
+    }
+}
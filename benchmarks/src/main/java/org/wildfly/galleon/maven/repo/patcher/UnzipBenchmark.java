@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jboss.galleon.util.IoUtils;
+import org.jboss.galleon.util.ZipUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extraction of the original repository: the galleon ZipUtils.unzip used
+ * before and the parallel unzip. With 200k entries and jars of 256 KB, the
+ * repository is several GB. The number of threads only applies to the
+ * parallel unzip.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class UnzipBenchmark {
+
+    private static final PatcherListener QUIET = new PatcherListener() {
+    };
+
+    @Param({"20000", "200000"})
+    public int entries;
+
+    @Param({"1024", "262144"})
+    public int jarSize;
+
+    @Param({"1", "4", "8"})
+    public int threads;
+
+    private BenchmarkRepository fixture;
+    private Path target;
+    private PatcherOptions options;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        fixture = BenchmarkRepository.create(entries, 1, 1, jarSize);
+        target = fixture.getDir().resolve("extracted");
+        options = new PatcherOptions().setParallelism(threads).setListener(QUIET);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        IoUtils.recursiveDelete(target);
+    }
+
+    @Benchmark
+    public Path zipUtils() throws Exception {
+        ZipUtils.unzip(fixture.getRepository(), target);
+        return target;
+    }
+
+    @Benchmark
+    public long parallelUnzip() throws Exception {
+        try (ZipFile zipFile = new ZipFile(fixture.getRepository().toFile())) {
+            return ParallelUnzip.unzip(zipFile, target, options);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Content of the repository as the original repository index plus the
+ * changes applied by the patcher. Existence checks and listings are answered
+ * from memory.
+ *
+ * @author jdenise
+ */
+abstract class AbstractMavenRepository implements MavenRepository {
+
+    protected final RepositoryIndex index;
+    protected final PatcherOptions options;
+    // Names relative to the maven-repository root.
+    private final Set<String> removed = new HashSet<>();
+    private final Set<String> removedDirs = new HashSet<>();
+    private final NavigableMap<String, AddedFile> added = new TreeMap<>();
+    private final Map<String, AddedFile> addedInParent = new TreeMap<>();
+
+    AbstractMavenRepository(RepositoryIndex index, PatcherOptions options) {
+        this.index = index;
+        this.options = options;
+    }
+
+    static String toEntryName(Path path) {
+        StringBuilder builder = new StringBuilder();
+        for (Path p : path) {
+            if (builder.length() > 0) {
+                builder.append('/');
+            }
+            builder.append(p.toString());
+        }
+        return builder.toString();
+    }
+
+    // '0' follows '/', all the entries located in a directory are lower than this bound.
+    private static String upperBound(String dirPrefix) {
+        return dirPrefix.substring(0, dirPrefix.length() - 1) + '0';
+    }
+
+    private boolean isOriginal(String name) {
+        if (name.endsWith("/")) {
+            return false;
+        }
+        return !removed.contains(name) && !isInRemovedDir(name) && index.find(index.getRootPrefix() + name) >= 0;
+    }
+
+    /**
+     * @return true if the entry of the original repository is deleted or
+     * replaced.
+     */
+    boolean isChanged(String entryName) {
+        String rootPrefix = index.getRootPrefix();
+        if (entryName.startsWith(rootPrefix)) {
+            String name = entryName.substring(rootPrefix.length());
+            return removed.contains(name) || added.containsKey(name) || isInRemovedDir(name);
+        }
+        if (entryName.startsWith(index.getParentPrefix())) {
+            return addedInParent.containsKey(entryName.substring(index.getParentPrefix().length()));
+        }
+        return false;
+    }
+
+    private boolean isInRemovedDir(String name) {
+        if (removedDirs.isEmpty()) {
+            return false;
+        }
+        int i = name.indexOf('/');
+        while (i >= 0) {
+            if (removedDirs.contains(name.substring(0, i + 1))) {
+                return true;
+            }
+            i = name.indexOf('/', i + 1);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean exists(Path path) {
+        String name = toEntryName(path);
+        if (added.containsKey(name) || isOriginal(name)) {
+            return true;
+        }
+        return !children(name + "/").isEmpty();
+    }
+
+    @Override
+    public List<Path> list(Path dir) {
+        List<Path> ret = new ArrayList<>();
+        for (String child : children(toEntryName(dir) + "/")) {
+            ret.add(Paths.get(child));
+        }
+        return ret;
+    }
+
+    @Override
+    public List<Path> listFiles(String suffix) {
+        Set<String> files = new TreeSet<>();
+        String rootPrefix = index.getRootPrefix();
+        for (int i = index.ceiling(rootPrefix); i < index.size() && index.getName(i).startsWith(rootPrefix); i++) {
+            String name = index.getName(i).substring(rootPrefix.length());
+            if (name.endsWith(suffix) && isOriginal(name)) {
+                files.add(name);
+            }
+        }
+        for (String name : added.keySet()) {
+            if (name.endsWith(suffix)) {
+                files.add(name);
+            }
+        }
+        List<Path> ret = new ArrayList<>();
+        for (String file : files) {
+            ret.add(Paths.get(file));
+        }
+        return ret;
+    }
+
+    private Set<String> children(String prefix) {
+        Set<String> children = new TreeSet<>();
+        String fullPrefix = index.getRootPrefix() + prefix;
+        int rootLength = index.getRootPrefix().length();
+        for (int i = index.ceiling(fullPrefix); i < index.size() && index.getName(i).startsWith(fullPrefix); i++) {
+            String name = index.getName(i).substring(rootLength);
+            if (isOriginal(name)) {
+                children.add(child(name, prefix));
+            }
+        }
+        for (String name : added.subMap(prefix, upperBound(prefix)).keySet()) {
+            children.add(child(name, prefix));
+        }
+        return children;
+    }
+
+    private static String child(String name, String prefix) {
+        int i = name.indexOf('/', prefix.length());
+        return i < 0 ? name : name.substring(0, i);
+    }
+
+    @Override
+    public void delete(Path file) throws IOException {
+        String name = toEntryName(file);
+        boolean original = isOriginal(name);
+        if (added.remove(name) == null && !original) {
+            throw new IOException(file + " doesn't exist in the maven repository");
+        }
+        if (original) {
+            removed.add(name);
+        }
+    }
+
+    @Override
+    public void deleteDir(Path dir) throws IOException {
+        String prefix = toEntryName(dir) + "/";
+        added.subMap(prefix, upperBound(prefix)).clear();
+        removedDirs.add(prefix);
+    }
+
+    @Override
+    public void install(Path file, Path source) throws IOException {
+        added.put(toEntryName(file), AddedFile.fromFile(source));
+    }
+
+    @Override
+    public void installAll(PatchRepository patch, Predicate<String> installed) throws IOException {
+        for (String name : patch.getFiles()) {
+            if (installed.test(name)) {
+                added.put(name, AddedFile.fromPatch(patch, name));
+            }
+        }
+    }
+
+    @Override
+    public void installInParent(String name, Path source) throws IOException {
+        addedInParent.put(name, AddedFile.fromFile(source));
+    }
+
+    @Override
+    public void saveDelta(ZipSink output) throws IOException {
+        Set<String> deleted = new TreeSet<>();
+        for (String name : removed) {
+            deleted.add(index.getRootPrefix() + name);
+        }
+        for (String dir : removedDirs) {
+            deleted.add(index.getRootPrefix() + dir);
+        }
+        RepositoryDelta.write(output, deleted, index, added, addedInParent, options);
+    }
+
+    /**
+     * @return The files added to the maven-repository root, sorted by name.
+     */
+    NavigableMap<String, AddedFile> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return The files added to the directory that contains the
+     * maven-repository directory, sorted by name.
+     */
+    Map<String, AddedFile> getAddedInParent() {
+        return addedInParent;
+    }
+}
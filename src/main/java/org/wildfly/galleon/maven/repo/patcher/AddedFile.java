@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A file added to the repository, either a local file (generated patch) or
+ * an entry of the maven repo patch.
+ *
+ * @author jdenise
+ */
+final class AddedFile {
+
+    private final Path file;
+    private final PatchRepository patch;
+    private final String entryName;
+
+    private AddedFile(Path file, PatchRepository patch, String entryName) {
+        this.file = file;
+        this.patch = patch;
+        this.entryName = entryName;
+    }
+
+    static AddedFile fromFile(Path file) {
+        return new AddedFile(file, null, null);
+    }
+
+    static AddedFile fromPatch(PatchRepository patch, String entryName) {
+        return new AddedFile(null, patch, entryName);
+    }
+
+    /**
+     * @return the local file, null if the file comes from the maven repo
+     * patch.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the maven repo patch, null if the file is a local file.
+     */
+    PatchRepository getPatch() {
+        return patch;
+    }
+
+    /**
+     * @return the name of the entry in the maven repo patch.
+     */
+    String getEntryName() {
+        return entryName;
+    }
+
+    InputStream newInputStream() throws IOException {
+        return file == null ? patch.newInputStream(entryName) : Files.newInputStream(file);
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * An artifact as referenced in artifact-versions.properties:
+ * groupId:artifactId:version:classifier:extension, the classifier being
+ * possibly empty. Coordinates are immutable and interned, as are their
+ * parts, an artifact referenced by many feature-packs is held once. The
+ * pools are weak, coordinates no more referenced are collected. A pooled
+ * coordinate is found from the string it is parsed from, without allocating
+ * its parts.
+ *
+ * @author jdenise
+ */
+final class ArtifactCoordinate {
+
+    private static final WeakPool<String> NAMES = new WeakPool<String>() {
+        @Override
+        boolean matches(String name, String str, int start, int end) {
+            return name.length() == end - start && str.regionMatches(start, name, 0, name.length());
+        }
+
+        @Override
+        String create(String str, int start, int end) {
+            return str.substring(start, end);
+        }
+    };
+
+    private static final WeakPool<ArtifactCoordinate> COORDINATES = new WeakPool<ArtifactCoordinate>() {
+        @Override
+        boolean matches(ArtifactCoordinate coordinate, String str, int start, int end) {
+            return coordinate.matches(str, start, end);
+        }
+
+        @Override
+        ArtifactCoordinate create(String str, int start, int end) {
+            int[] separators = separators(str, start, end);
+            return new ArtifactCoordinate(ArtifactCoordinate.intern(str, start, separators[0]),
+                    ArtifactCoordinate.intern(str, separators[0] + 1, separators[1]),
+                    ArtifactCoordinate.intern(str, separators[1] + 1, separators[2]),
+                    ArtifactCoordinate.intern(str, separators[2] + 1, separators[3]),
+                    ArtifactCoordinate.intern(str, separators[3] + 1, end));
+        }
+    };
+
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+    private final String classifier;
+    private final String extension;
+    private final int hash;
+
+    private ArtifactCoordinate(String groupId, String artifactId, String version, String classifier, String extension) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.classifier = classifier;
+        this.extension = extension;
+        int h = groupId.hashCode();
+        h = 31 * h + artifactId.hashCode();
+        h = 31 * h + version.hashCode();
+        h = 31 * h + classifier.hashCode();
+        this.hash = 31 * h + extension.hashCode();
+    }
+
+    static ArtifactCoordinate of(String groupId, String artifactId, String version, String classifier, String extension) {
+        ArtifactCoordinate coordinate = new ArtifactCoordinate(intern(groupId), intern(artifactId), intern(version),
+                intern(classifier), intern(extension));
+        return COORDINATES.intern(coordinate, coordinate.hash);
+    }
+
+    /**
+     * @return The pooled instance of a name.
+     */
+    static String intern(String name) {
+        return NAMES.intern(name, 0, name.length(), name.hashCode());
+    }
+
+    /**
+     * @return The pooled instance of a name read from a region of a string,
+     * the name is allocated only if not pooled.
+     */
+    static String intern(String str, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + str.charAt(i);
+        }
+        return NAMES.intern(str, start, end, hash);
+    }
+
+    static ArtifactCoordinate parse(String str) {
+        return parse(str, 0, str.length());
+    }
+
+    /**
+     * Parse groupId:artifactId:version:classifier:extension from a region of
+     * a string. The hash of the coordinate is computed from the region, the
+     * coordinate and its parts are allocated only if not pooled.
+     */
+    static ArtifactCoordinate parse(String str, int start, int end) {
+        int hash = 0;
+        int partHash = 0;
+        int separators = 0;
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (c == ':') {
+                hash = 31 * hash + partHash;
+                partHash = 0;
+                separators += 1;
+            } else {
+                partHash = 31 * partHash + c;
+            }
+        }
+        if (separators != 4) {
+            throw invalid(str, start, end);
+        }
+        return COORDINATES.intern(str, start, end, 31 * hash + partHash);
+    }
+
+    /**
+     * @return The repository path of an artifact, without creating the
+     * coordinate.
+     */
+    static Path toPath(String str) {
+        int[] separators = separators(str, 0, str.length());
+        StringBuilder builder = new StringBuilder(str.length() * 2);
+        appendGroupPath(builder, str, 0, separators[0]);
+        builder.append('/').append(str, separators[0] + 1, separators[1]);
+        builder.append('/').append(str, separators[1] + 1, separators[2]);
+        builder.append('/').append(str, separators[0] + 1, separators[1]);
+        builder.append('-').append(str, separators[1] + 1, separators[2]);
+        if (separators[3] > separators[2] + 1) {
+            builder.append('-').append(str, separators[2] + 1, separators[3]);
+        }
+        builder.append('.').append(str, separators[3] + 1, str.length());
+        return Paths.get(builder.toString());
+    }
+
+    private static int[] separators(String str, int start, int end) {
+        int[] separators = new int[4];
+        int from = start;
+        for (int i = 0; i < separators.length; i++) {
+            int separator = str.indexOf(':', from);
+            if (separator < 0 || separator >= end) {
+                throw invalid(str, start, end);
+            }
+            separators[i] = separator;
+            from = separator + 1;
+        }
+        if (str.indexOf(':', from) >= 0 && str.indexOf(':', from) < end) {
+            throw invalid(str, start, end);
+        }
+        return separators;
+    }
+
+    private static IllegalArgumentException invalid(String str, int start, int end) {
+        return new IllegalArgumentException("Invalid artifact " + str.substring(start, end)
+                + ", groupId:artifactId:version:classifier:extension expected");
+    }
+
+    /**
+     * @return true if the region is the string form of this coordinate.
+     */
+    private boolean matches(String str, int start, int end) {
+        if (end - start != groupId.length() + artifactId.length() + version.length() + classifier.length()
+                + extension.length() + 4) {
+            return false;
+        }
+        int i = matchPart(str, start, groupId);
+        i = matchPart(str, i, artifactId);
+        i = matchPart(str, i, version);
+        i = matchPart(str, i, classifier);
+        return i >= 0 && str.regionMatches(i, extension, 0, extension.length());
+    }
+
+    /**
+     * @return The position after the part and its separator, -1 if they
+     * don't match.
+     */
+    private static int matchPart(String str, int i, String part) {
+        if (i < 0 || !str.regionMatches(i, part, 0, part.length()) || str.charAt(i + part.length()) != ':') {
+            return -1;
+        }
+        return i + part.length() + 1;
+    }
+
+    private static void appendGroupPath(StringBuilder builder, String groupId, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = groupId.charAt(i);
+            builder.append(c == '.' ? '/' : c);
+        }
+    }
+
+    /**
+     * @param path A file of the repository, relative to the repository root:
+     * groupId directories, artifactId, version, file name.
+     */
+    static ArtifactCoordinate fromPath(Path path) {
+        String str = path.toString();
+        char separator = path.getFileSystem().getSeparator().charAt(0);
+        int fileIndex = str.lastIndexOf(separator);
+        int versionIndex = fileIndex <= 0 ? -1 : str.lastIndexOf(separator, fileIndex - 1);
+        int artifactIdIndex = versionIndex <= 0 ? -1 : str.lastIndexOf(separator, versionIndex - 1);
+        if (artifactIdIndex <= 0) {
+            throw new IllegalArgumentException("Invalid artifact path " + path);
+        }
+        String groupId = str.substring(0, artifactIdIndex).replace(separator, '.');
+        String artifactId = str.substring(artifactIdIndex + 1, versionIndex);
+        String version = str.substring(versionIndex + 1, fileIndex);
+        String file = str.substring(fileIndex + 1);
+        int versionStart = file.startsWith(version, artifactId.length() + 1) ? artifactId.length() + 1 : file.indexOf(version);
+        int extIndex = file.lastIndexOf('.');
+        int classifierIndex = versionStart + version.length();
+        // Remove the leading '-' of the classifier.
+        String classifier = classifierIndex < extIndex ? file.substring(classifierIndex + 1, extIndex) : "";
+        return of(groupId, artifactId, version, classifier, file.substring(extIndex + 1));
+    }
+
+    String getGroupId() {
+        return groupId;
+    }
+
+    String getArtifactId() {
+        return artifactId;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    String getClassifier() {
+        return classifier;
+    }
+
+    String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return The artifact-versions.properties key:
+     * groupId:artifactId[::classifier].
+     */
+    String getKey() {
+        StringBuilder builder = new StringBuilder(groupId.length() + artifactId.length() + classifier.length() + 3);
+        builder.append(groupId).append(':').append(artifactId);
+        if (!classifier.isEmpty()) {
+            builder.append("::").append(classifier);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The path of the artifact, relative to the repository root.
+     */
+    Path toPath() {
+        StringBuilder builder = new StringBuilder(2 * (groupId.length() + artifactId.length() + version.length())
+                + classifier.length() + extension.length() + 5);
+        appendGroupPath(builder, groupId, 0, groupId.length());
+        builder.append('/').append(artifactId).append('/').append(version).append('/').append(artifactId).append('-').append(version);
+        if (!classifier.isEmpty()) {
+            builder.append('-').append(classifier);
+        }
+        builder.append('.').append(extension);
+        return Paths.get(builder.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ArtifactCoordinate)) {
+            return false;
+        }
+        ArtifactCoordinate other = (ArtifactCoordinate) obj;
+        return hash == other.hash && groupId.equals(other.groupId) && artifactId.equals(other.artifactId)
+                && version.equals(other.version) && classifier.equals(other.classifier) && extension.equals(other.extension);
+    }
+
+    @Override
+    public String toString() {
+        return groupId + ":" + artifactId + ":" + version + ":" + classifier + ":" + extension;
+    }
+}
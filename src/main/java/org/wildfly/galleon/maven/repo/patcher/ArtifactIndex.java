@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index of the artifacts referenced by all the scanned
+ * feature-packs. Maps an artifact key (groupId:artifactId[::classifier]) to the
+ * feature-packs that reference it, in the order the feature-packs have been
+ * added. The index can be restricted to a set of keys, the artifacts of the
+ * maven repo patch, the other artifacts are then not referenced.
+ *
+ * @author jdenise
+ */
+final class ArtifactIndex {
+
+    static final class Reference {
+
+        private final int featurePack;
+        private final ArtifactCoordinate artifact;
+
+        private Reference(int featurePack, ArtifactCoordinate artifact) {
+            this.featurePack = featurePack;
+            this.artifact = artifact;
+        }
+
+        /**
+         * @return the index of the feature-pack
+         */
+        int getFeaturePack() {
+            return featurePack;
+        }
+
+        /**
+         * @return the artifact as referenced by the feature-pack
+         */
+        ArtifactCoordinate getArtifact() {
+            return artifact;
+        }
+    }
+
+    private final Map<String, List<Reference>> index = new HashMap<>();
+    // Null if all the keys are indexed.
+    private final Set<String> keys;
+
+    ArtifactIndex() {
+        this(null);
+    }
+
+    ArtifactIndex(Set<String> keys) {
+        this.keys = keys;
+    }
+
+    void add(int featurePack, Map<String, ArtifactCoordinate> versionProps) {
+        for (Map.Entry<String, ArtifactCoordinate> entry : versionProps.entrySet()) {
+            if (keys != null && !keys.contains(entry.getKey())) {
+                continue;
+            }
+            List<Reference> refs = index.get(entry.getKey());
+            if (refs == null) {
+                refs = new ArrayList<>(1);
+                index.put(entry.getKey(), refs);
+            }
+            refs.add(new Reference(featurePack, entry.getValue()));
+        }
+    }
+
+    List<Reference> get(String key) {
+        List<Reference> refs = index.get(key);
+        return refs == null ? Collections.emptyList() : refs;
+    }
+
+    /**
+     * @return The artifacts as referenced by a feature-pack.
+     */
+    Map<String, ArtifactCoordinate> getArtifacts(int featurePack, Set<String> keys) {
+        Map<String, ArtifactCoordinate> artifacts = new HashMap<>();
+        for (String key : keys) {
+            for (Reference ref : get(key)) {
+                if (ref.featurePack == featurePack) {
+                    artifacts.put(key, ref.artifact);
+                    break;
+                }
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Assign each artifact to all the feature-packs that reference it, the
+     * versions of a feature-pack present in the repository are all patched.
+     *
+     * @return The claimed artifacts of each feature-pack.
+     */
+    List<Map<String, ArtifactCoordinate>> claim(Map<String, ArtifactCoordinate> artifacts, int numFeaturePacks) {
+        List<Map<String, ArtifactCoordinate>> claimed = new ArrayList<>(numFeaturePacks);
+        for (int i = 0; i < numFeaturePacks; i++) {
+            claimed.add(new HashMap<>());
+        }
+        for (Map.Entry<String, ArtifactCoordinate> entry : artifacts.entrySet()) {
+            for (Reference ref : get(entry.getKey())) {
+                claimed.get(ref.getFeaturePack()).put(entry.getKey(), entry.getValue());
+            }
+        }
+        return claimed;
+    }
+}
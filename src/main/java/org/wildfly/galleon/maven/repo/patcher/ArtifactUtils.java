@@ -21,11 +21,10 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import org.jboss.galleon.universe.FeaturePackLocation;
 import static org.wildfly.galleon.maven.repo.patcher.Patcher.PATCH_MARKER;
 
@@ -35,92 +34,84 @@ import static org.wildfly.galleon.maven.repo.patcher.Patcher.PATCH_MARKER;
  */
 public final class ArtifactUtils {
 
-    private static void readProperties(Path propsFile, Map<String, String> propsMap) throws Exception {
-        try (BufferedReader reader = Files.newBufferedReader(propsFile)) {
-            String line = reader.readLine();
-            while (line != null) {
-                line = line.trim();
-                if (line.charAt(0) != '#' && !line.isEmpty()) {
-                    final int i = line.indexOf('=');
-                    if (i < 0) {
-                        throw new Exception("Failed to parse property " + line + " from " + propsFile);
-                    }
-                    propsMap.put(line.substring(0, i), line.substring(i + 1));
+    private static void readProperties(BufferedReader reader, String source, Map<String, String> propsMap) throws Exception {
+        String line = reader.readLine();
+        while (line != null) {
+            line = line.trim();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                final int i = line.indexOf('=');
+                if (i < 0) {
+                    throw new Exception("Failed to parse property " + line + " from " + source);
                 }
-                line = reader.readLine();
+                propsMap.put(line.substring(0, i), line.substring(i + 1));
             }
+            line = reader.readLine();
         }
     }
 
     static Map<String, String> readProperties(final Path propsFile) throws Exception {
+        try (BufferedReader reader = Files.newBufferedReader(propsFile)) {
+            return readProperties(reader, propsFile.toString());
+        }
+    }
+
+    static Map<String, String> readProperties(BufferedReader reader, String source) throws Exception {
         final Map<String, String> propsMap = new HashMap<>();
-        readProperties(propsFile, propsMap);
+        readProperties(reader, source, propsMap);
         return propsMap;
     }
 
-    static void storeArtifactVersions(Map<String, String> map, Path target) throws IOException {
+    /**
+     * Read artifact-versions.properties, keys and artifacts are interned.
+     */
+    static Map<String, ArtifactCoordinate> readArtifactVersions(BufferedReader reader, String source) throws Exception {
+        final Map<String, ArtifactCoordinate> versions = new HashMap<>();
+        String line = reader.readLine();
+        while (line != null) {
+            line = line.trim();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                final int i = line.indexOf('=');
+                if (i < 0) {
+                    throw new Exception("Failed to parse property " + line + " from " + source);
+                }
+                try {
+                    versions.put(ArtifactCoordinate.intern(line, 0, i), ArtifactCoordinate.parse(line, i + 1, line.length()));
+                } catch (IllegalArgumentException ex) {
+                    throw new Exception("Failed to parse property " + line + " from " + source + ": " + ex.getMessage());
+                }
+            }
+            line = reader.readLine();
+        }
+        return versions;
+    }
+
+    static void storeArtifactVersions(Map<String, ?> map, Path target) throws IOException {
         try (BufferedWriter writer = Files.newBufferedWriter(target, StandardOpenOption.CREATE)) {
-            for (Map.Entry<String, String> entry : map.entrySet()) {
+            // Sorted, identical maps give identical files.
+            for (Map.Entry<String, ?> entry : new TreeMap<>(map).entrySet()) {
                 writer.write(entry.getKey());
                 writer.write('=');
-                writer.write(entry.getValue());
+                writer.write(entry.getValue().toString());
                 writer.newLine();
             }
         }
     }
 
     static Path convertToPath(String str) {
-
-        final String[] parts = str.split(":");
-        final String groupId = parts[0];
-        final String artifactId = parts[1];
-        String version = parts[2];
-        String classifier = parts[3];
-        String extension = parts[4];
-
-        Path path = Paths.get(groupId.replaceAll("\\.", "/")).resolve(artifactId).resolve(version);
-        StringBuilder name = new StringBuilder();
-        name.append(artifactId).append("-").append(version);
-        if (classifier != null && !classifier.isEmpty()) {
-            name.append("-").append(classifier);
-        }
-        name.append(".").append(extension);
-        path = path.resolve(name.toString());
-        return path;
+        return ArtifactCoordinate.toPath(str);
     }
 
     static String[] pathToArtifactVersion(Path path) {
-        Path versionPath = path.getParent();
-        Path artifactIdPath = versionPath.getParent();
-        Path groupIdPath = artifactIdPath.getParent();
-        String version = path.getParent().getFileName().toString();
-        String artifactId = artifactIdPath.getFileName().toString();
-        String groupId = groupIdPath.toString().replaceAll("/", ".");
-        String artifact = path.getFileName().toString();
-        int versionIndex = artifact.indexOf(version);
-        int extIndex = artifact.lastIndexOf(".");
-        String extension = artifact.substring(extIndex + 1);
-        String classifier = artifact.substring(versionIndex + version.length(), extIndex);
-        StringBuilder key = new StringBuilder();
-        key.append(groupId).append(":").append(artifactId);
-        StringBuilder value = new StringBuilder();
-        value.append(groupId).append(":").append(artifactId).append(":").append(version).append(":");
-        if (classifier != null && !classifier.isEmpty()) {
-            // Remove leading "-";
-            classifier = classifier.substring(1);
-            key.append("::").append(classifier);
-            value.append(classifier);
-        }
-        value.append(":").append(extension);
-        String[] ret = {key.toString(), value.toString()};
+        ArtifactCoordinate coordinate = ArtifactCoordinate.fromPath(path);
+        String[] ret = {coordinate.getKey(), coordinate.toString()};
         return ret;
     }
 
-    static Map<String, String> convertToArtifactVersion(Set<Path> files) throws Exception {
-        Map<String, String> map = new HashMap<>();
+    static Map<String, ArtifactCoordinate> convertToArtifactVersion(Iterable<Path> files) throws Exception {
+        Map<String, ArtifactCoordinate> map = new HashMap<>();
         for (Path path : files) {
-            String[] entry = ArtifactUtils.pathToArtifactVersion(path);
-            map.put(entry[0], entry[1]);
+            ArtifactCoordinate coordinate = ArtifactCoordinate.fromPath(path);
+            map.put(ArtifactCoordinate.intern(coordinate.getKey()), coordinate);
         }
         return map;
     }
@@ -142,6 +133,10 @@ public final class ArtifactUtils {
 
     static String createPatchVersion(String version) {
         int idx = version.indexOf("-redhat-");
+        if (idx < 0) {
+            // A version without a -redhat- qualifier, e.g. 26.0.0.Final.
+            return version + PATCH_MARKER;
+        }
         String prefix = version.substring(0, idx);
         return prefix + PATCH_MARKER + version.substring(idx);
     }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import org.jboss.galleon.util.IoUtils;
+
+/**
+ * Run many patch jobs in the same JVM. The jobs are read from a manifest,
+ * one job per line: original zipped repo, zipped repo patch and generated
+ * zipped repo, separated by spaces. Relative paths are resolved against the
+ * manifest directory, lines starting with '#' are ignored. Two jobs can't
+ * generate the same file.
+ * <p>
+ * Each maven repo patch is indexed once and the feature-pack scans are
+ * cached in memory for all the jobs. Jobs run concurrently, each in its own
+ * work dir.
+ *
+ * @author jdenise
+ */
+final class Batch {
+
+    private static final class Job {
+
+        private final Path originalMavenRepo;
+        private final Path repoPatch;
+        private final Path outputFile;
+
+        private Job(Path originalMavenRepo, Path repoPatch, Path outputFile) {
+            this.originalMavenRepo = originalMavenRepo;
+            this.repoPatch = repoPatch;
+            this.outputFile = outputFile;
+        }
+
+        @Override
+        public String toString() {
+            return originalMavenRepo + " + " + repoPatch + " => " + outputFile;
+        }
+    }
+
+    static void run(Path manifest, PatcherOptions options, int jobs) throws Exception {
+        List<Job> lst = readManifest(manifest);
+        if (lst.isEmpty()) {
+            throw new Exception("No job found in " + manifest);
+        }
+        for (Job job : lst) {
+            if (!Files.exists(job.originalMavenRepo)) {
+                throw new Exception("Original repo " + job.originalMavenRepo + " doesn't exist");
+            }
+            if (!Files.exists(job.repoPatch)) {
+                throw new Exception("Repo patch " + job.repoPatch + " doesn't exist");
+            }
+        }
+        // Without a work dir, the shared maven repo patches and the jobs use a temporary one.
+        boolean tempWorkDir = options.getWorkDir() == null;
+        Path workDir = tempWorkDir ? Files.createTempDirectory("galleon-patcher") : options.getWorkDir();
+        PatcherOptions batchOptions = new PatcherOptions(options).setWorkDir(workDir);
+        PatcherListener listener = options.getListener();
+        FeaturePackCache fpCache = new FeaturePackCache(options.getFeaturePackCache(), listener,
+                options.isBoundedMemory() ? options.getParallelism() * jobs : 0);
+        Map<Path, PatchRepository> patches = new HashMap<>();
+        ExecutorService executor = ParallelUtils.newExecutor(Math.min(jobs, lst.size()), "batch");
+        try {
+            for (Job job : lst) {
+                if (!patches.containsKey(job.repoPatch)) {
+                    patches.put(job.repoPatch, PatchRepository.newInstance(ZipSource.of(job.repoPatch), batchOptions));
+                }
+            }
+            List<Callable<Exception>> tasks = new ArrayList<>();
+            for (int i = 0; i < lst.size(); i++) {
+                Job job = lst.get(i);
+                PatcherOptions jobOptions = new PatcherOptions(options).setWorkDir(workDir.resolve("job-" + i));
+                tasks.add(() -> {
+                    try {
+                        PatchResult result = new Patcher(job.originalMavenRepo, job.outputFile, jobOptions, fpCache,
+                                patches.get(job.repoPatch)).patch();
+                        listener.info("\n" + job + ":\n" + result);
+                        return null;
+                    } catch (Exception ex) {
+                        return ex;
+                    }
+                });
+            }
+            List<Exception> results = ParallelUtils.invokeAll(executor, tasks);
+            int failed = 0;
+            listener.info("\nBatch jobs:");
+            for (int i = 0; i < lst.size(); i++) {
+                Exception failure = results.get(i);
+                if (failure == null) {
+                    listener.info(" - " + lst.get(i) + ": done");
+                } else {
+                    failed += 1;
+                    listener.info(" - " + lst.get(i) + ": FAILED, " + failure);
+                }
+            }
+            if (failed > 0) {
+                throw new Exception(failed + " of " + lst.size() + " batch jobs failed");
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                for (PatchRepository patch : patches.values()) {
+                    patch.close();
+                }
+            } finally {
+                if (tempWorkDir) {
+                    IoUtils.recursiveDelete(workDir);
+                }
+            }
+        }
+    }
+
+    private static List<Job> readManifest(Path manifest) throws Exception {
+        Path dir = manifest.toAbsolutePath().getParent();
+        List<Job> jobs = new ArrayList<>();
+        // Jobs run concurrently, they can't write the same file.
+        Map<Path, Integer> outputs = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            int num = 0;
+            while ((line = reader.readLine()) != null) {
+                num += 1;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length != 3) {
+                    throw new Exception("Invalid job at line " + num + " of " + manifest
+                            + ", 3 paths expected: zipped repo, zipped repo patch, generated zipped repo file name");
+                }
+                Path output = dir.resolve(parts[2]).normalize();
+                Integer previous = outputs.put(output, num);
+                if (previous != null) {
+                    throw new Exception("Invalid job at line " + num + " of " + manifest + ", " + output
+                            + " is already generated by the job at line " + previous);
+                }
+                jobs.add(new Job(dir.resolve(parts[0]).normalize(), dir.resolve(parts[1]).normalize(), output));
+            }
+        }
+        return jobs;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipUtil;
+
+/**
+ * Write a zip sequentially without keeping its entries in the heap. The
+ * central directory records are spilled to a temporary file while the
+ * entries are written, then appended to the zip. Entries are added with their
+ * CRC and sizes, no data descriptor is written. Names are encoded in UTF-8,
+ * zip64 extra fields are written when sizes or offsets don't fit in 32 bits.
+ * <p>
+ * Used in bounded memory mode, a {@code ZipArchiveOutputStream} keeps all
+ * the entries until the zip is closed.
+ *
+ * @author jdenise
+ */
+final class BoundedZipOutput implements Closeable {
+
+    private static final int LFH_SIGNATURE = 0x04034b50;
+    private static final int CFH_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final int ZIP64_EXTRA = 1;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
+    private final OutputStream out;
+    private final Path centralDirectory;
+    private final OutputStream centralDirectoryOut;
+    private final byte[] buffer = new byte[64 * 1024];
+    private long written;
+    private long centralDirectorySize;
+    private long entries;
+
+    /**
+     * @param tmpDir The directory of the spilled central directory.
+     */
+    BoundedZipOutput(OutputStream out, Path tmpDir) throws IOException {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        centralDirectory = Files.createTempFile(tmpDir, "central-directory", ".bin");
+        centralDirectoryOut = new BufferedOutputStream(Files.newOutputStream(centralDirectory), 64 * 1024);
+    }
+
+    /**
+     * Add an entry, its method, CRC and sizes are set, the content is
+     * already compressed.
+     */
+    void addRawArchiveEntry(ZipArchiveEntry entry, InputStream raw) throws IOException {
+        byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+        long size = entry.getSize();
+        long compressedSize = entry.getCompressedSize();
+        long offset = written;
+        boolean zip64Sizes = size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+        boolean zip64Offset = offset >= ZIP64_MAGIC;
+        int version = zip64Sizes || zip64Offset ? ZIP64_VERSION : VERSION;
+        byte[] dosTime = new byte[4];
+        ZipUtil.toDosTime(entry.getTime() == -1 ? System.currentTimeMillis() : entry.getTime(), dosTime, 0);
+
+        ByteBuffer header = ByteBuffer.allocate(30 + name.length + (zip64Sizes ? 20 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LFH_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.getMethod());
+        header.put(dosTime);
+        header.putInt((int) entry.getCrc());
+        header.putInt((int) (zip64Sizes ? ZIP64_MAGIC : compressedSize));
+        header.putInt((int) (zip64Sizes ? ZIP64_MAGIC : size));
+        header.putShort((short) name.length);
+        header.putShort((short) (zip64Sizes ? 20 : 0));
+        header.put(name);
+        if (zip64Sizes) {
+            header.putShort((short) ZIP64_EXTRA);
+            header.putShort((short) 16);
+            header.putLong(size);
+            header.putLong(compressedSize);
+        }
+        write(header.array());
+        long copied = 0;
+        int n;
+        while ((n = raw.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            copied += n;
+        }
+        written += copied;
+        if (copied != compressedSize) {
+            throw new IOException(entry.getName() + " compressed size is " + compressedSize + ", " + copied + " bytes read");
+        }
+
+        int extraLength = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+        ByteBuffer record = ByteBuffer.allocate(46 + name.length + (extraLength > 0 ? 4 + extraLength : 0)).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(CFH_SIGNATURE);
+        record.putShort((short) ((entry.getPlatform() << 8) | version));
+        record.putShort((short) version);
+        record.putShort((short) UTF8_FLAG);
+        record.putShort((short) entry.getMethod());
+        record.put(dosTime);
+        record.putInt((int) entry.getCrc());
+        record.putInt((int) (zip64Sizes ? ZIP64_MAGIC : compressedSize));
+        record.putInt((int) (zip64Sizes ? ZIP64_MAGIC : size));
+        record.putShort((short) name.length);
+        record.putShort((short) (extraLength > 0 ? 4 + extraLength : 0));
+        // Comment length, disk number and internal attributes.
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putInt((int) entry.getExternalAttributes());
+        record.putInt((int) (zip64Offset ? ZIP64_MAGIC : offset));
+        record.put(name);
+        if (extraLength > 0) {
+            record.putShort((short) ZIP64_EXTRA);
+            record.putShort((short) extraLength);
+            if (zip64Sizes) {
+                record.putLong(size);
+                record.putLong(compressedSize);
+            }
+            if (zip64Offset) {
+                record.putLong(offset);
+            }
+        }
+        centralDirectoryOut.write(record.array());
+        centralDirectorySize += record.capacity();
+        entries += 1;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        written += bytes.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            centralDirectoryOut.close();
+            long centralDirectoryOffset = written;
+            try (InputStream in = Files.newInputStream(centralDirectory)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    written += n;
+                }
+            }
+            if (entries >= ZIP64_MAGIC_SHORT || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC) {
+                long zip64Offset = written;
+                ByteBuffer zip64 = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+                zip64.putInt(ZIP64_EOCD_SIGNATURE);
+                zip64.putLong(44);
+                zip64.putShort((short) ZIP64_VERSION);
+                zip64.putShort((short) ZIP64_VERSION);
+                zip64.putInt(0);
+                zip64.putInt(0);
+                zip64.putLong(entries);
+                zip64.putLong(entries);
+                zip64.putLong(centralDirectorySize);
+                zip64.putLong(centralDirectoryOffset);
+                zip64.putInt(ZIP64_EOCD_LOCATOR_SIGNATURE);
+                zip64.putInt(0);
+                zip64.putLong(zip64Offset);
+                zip64.putInt(1);
+                write(zip64.array());
+            }
+            ByteBuffer eocd = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            eocd.putInt(EOCD_SIGNATURE);
+            eocd.putShort((short) 0);
+            eocd.putShort((short) 0);
+            eocd.putShort((short) Math.min(entries, ZIP64_MAGIC_SHORT));
+            eocd.putShort((short) Math.min(entries, ZIP64_MAGIC_SHORT));
+            eocd.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+            eocd.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+            eocd.putShort((short) 0);
+            write(eocd.array());
+        } finally {
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(centralDirectory);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * SHA-1 and MD5 of a content, computed in a single pass, and the maven
+ * checksum files (.sha1, .md5) that go with it.
+ *
+ * @author jdenise
+ */
+final class Checksums {
+
+    static final String SHA1 = ".sha1";
+    static final String MD5 = ".md5";
+    private static final int SHA1_LENGTH = 40;
+    private static final int MD5_LENGTH = 32;
+
+    private final MessageDigest sha1Digest;
+    private final MessageDigest md5Digest;
+    private String sha1;
+    private String md5;
+
+    Checksums() {
+        try {
+            sha1Digest = MessageDigest.getInstance("SHA-1");
+            md5Digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static Checksums compute(InputStream in) throws IOException {
+        Checksums checksums = new Checksums();
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            checksums.update(buffer, 0, read);
+        }
+        return checksums;
+    }
+
+    void update(byte[] bytes, int offset, int length) {
+        sha1Digest.update(bytes, offset, length);
+        md5Digest.update(bytes, offset, length);
+    }
+
+    /**
+     * @return A stream that computes the checksums of what is written to the
+     * wrapped stream.
+     */
+    OutputStream wrap(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                update(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+                update(bytes, offset, length);
+            }
+        };
+    }
+
+    String getSha1() {
+        if (sha1 == null) {
+            sha1 = toHex(sha1Digest.digest());
+        }
+        return sha1;
+    }
+
+    String getMd5() {
+        if (md5 == null) {
+            md5 = toHex(md5Digest.digest());
+        }
+        return md5;
+    }
+
+    /**
+     * Write the .sha1 and .md5 files of a file.
+     */
+    void writeFiles(Path file) throws IOException {
+        Files.write(file.resolveSibling(file.getFileName() + SHA1), getSha1().getBytes(StandardCharsets.US_ASCII));
+        Files.write(file.resolveSibling(file.getFileName() + MD5), getMd5().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return the SHA-1 found in a maven .sha1 file, null if invalid.
+     */
+    static String readSha1(InputStream in) throws IOException {
+        return parse(readLine(in), SHA1_LENGTH);
+    }
+
+    /**
+     * @return the MD5 found in a maven .md5 file, null if invalid.
+     */
+    static String readMd5(InputStream in) throws IOException {
+        return parse(readLine(in), MD5_LENGTH);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII)).readLine();
+    }
+
+    static String parseSha1(String content) {
+        return parse(content, SHA1_LENGTH);
+    }
+
+    // Maven checksum files can contain the file name after the checksum.
+    private static String parse(String content, int length) {
+        if (content == null) {
+            return null;
+        }
+        String checksum = content.trim();
+        int i = checksum.indexOf(' ');
+        if (i > 0) {
+            checksum = checksum.substring(0, i);
+        }
+        checksum = checksum.toLowerCase(Locale.ENGLISH);
+        if (checksum.length() != length) {
+            return null;
+        }
+        for (int j = 0; j < checksum.length(); j++) {
+            char c = checksum.charAt(j);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return null;
+            }
+        }
+        return checksum;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
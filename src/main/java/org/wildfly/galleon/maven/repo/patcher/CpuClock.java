@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CPU time of the threads of a patcher run: the thread that runs it and the
+ * workers created by {@link ParallelUtils#newExecutor} while it runs. The
+ * CPU time of the workers is summed, the time of the terminated ones being
+ * recorded when they exit. Runs executed concurrently in the same JVM are
+ * measured separately.
+ *
+ * @author jdenise
+ */
+final class CpuClock {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final ThreadLocal<CpuClock> CURRENT = new ThreadLocal<>();
+
+    private final Thread owner;
+    private final long ownerStart;
+    private final CpuClock previous;
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong exited = new AtomicLong();
+
+    private CpuClock(Thread owner, long ownerStart, CpuClock previous) {
+        this.owner = owner;
+        this.ownerStart = ownerStart;
+        this.previous = previous;
+    }
+
+    private static boolean isSupported() {
+        return THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+    }
+
+    /**
+     * Measure the current thread and the workers it creates, until
+     * {@link #stop()} is called.
+     *
+     * @return The clock, null if the thread CPU time is not supported.
+     */
+    static CpuClock start() {
+        if (!isSupported()) {
+            return null;
+        }
+        CpuClock clock = new CpuClock(Thread.currentThread(), THREADS.getCurrentThreadCpuTime(), CURRENT.get());
+        CURRENT.set(clock);
+        return clock;
+    }
+
+    void stop() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Called by the thread that creates a worker.
+     *
+     * @return The task of the worker, measured by the clock of the current
+     * thread if any.
+     */
+    static Runnable measure(Runnable task) {
+        CpuClock clock = CURRENT.get();
+        if (clock == null) {
+            return task;
+        }
+        return () -> {
+            Thread thread = Thread.currentThread();
+            CURRENT.set(clock);
+            clock.workers.add(thread);
+            try {
+                task.run();
+            } finally {
+                clock.exited.addAndGet(THREADS.getCurrentThreadCpuTime());
+                clock.workers.remove(thread);
+            }
+        };
+    }
+
+    /**
+     * @return The CPU time used by the run since the clock started.
+     */
+    long getCpuTime() {
+        long cpu = exited.get() + THREADS.getThreadCpuTime(owner.getId()) - ownerStart;
+        for (Thread worker : workers) {
+            long workerCpu = THREADS.getThreadCpuTime(worker.getId());
+            if (workerCpu > 0) {
+                cpu += workerCpu;
+            }
+        }
+        return cpu;
+    }
+}
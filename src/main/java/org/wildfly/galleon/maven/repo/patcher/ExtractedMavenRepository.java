@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Predicate;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jboss.galleon.util.IoUtils;
+
+/**
+ * A maven repository unzipped in the tool work dir.
+ *
+ * @author jdenise
+ */
+final class ExtractedMavenRepository extends AbstractMavenRepository {
+
+    private final Path repoWorkDir;
+    private final Path repoParentDir;
+    private final Path mavenRepoRoot;
+
+    private ExtractedMavenRepository(RepositoryIndex index, Path repoWorkDir, PatcherOptions options) {
+        super(index, options);
+        this.repoWorkDir = repoWorkDir;
+        repoParentDir = repoWorkDir.resolve(index.getParentPrefix());
+        mavenRepoRoot = repoWorkDir.resolve(index.getRootPrefix());
+    }
+
+    static ExtractedMavenRepository newInstance(ZipSource originalMavenRepo, Path repoWorkDir, PatcherOptions options) throws Exception {
+        try (ZipFile zipFile = originalMavenRepo.open()) {
+            RepositoryIndex index = RepositoryIndex.get(zipFile, originalMavenRepo, options);
+            options.getListener().info("Unzipping maven repo to " + repoWorkDir);
+            ParallelUnzip.unzip(zipFile, repoWorkDir, options);
+            return new ExtractedMavenRepository(index, repoWorkDir, options);
+        }
+    }
+
+    @Override
+    public InputStream newInputStream(Path file) throws IOException {
+        return options.getIoStats().count(Files.newInputStream(mavenRepoRoot.resolve(file)));
+    }
+
+    @Override
+    public SeekableByteChannel newChannel(Path file) throws IOException {
+        return options.getIoStats().count(Files.newByteChannel(mavenRepoRoot.resolve(file)));
+    }
+
+    @Override
+    public void delete(Path file) throws IOException {
+        super.delete(file);
+        Files.delete(mavenRepoRoot.resolve(file));
+    }
+
+    @Override
+    public void deleteDir(Path dir) throws IOException {
+        super.deleteDir(dir);
+        IoUtils.recursiveDelete(mavenRepoRoot.resolve(dir));
+    }
+
+    @Override
+    public void install(Path file, Path source) throws IOException {
+        super.install(file, source);
+        Path target = mavenRepoRoot.resolve(file);
+        Files.createDirectories(target.getParent());
+        Files.copy(source, target);
+        options.getIoStats().written(Files.size(target));
+    }
+
+    @Override
+    public void installAll(PatchRepository patch, Predicate<String> installed) throws IOException {
+        super.installAll(patch, installed);
+        for (String name : patch.getFiles()) {
+            if (!installed.test(name)) {
+                continue;
+            }
+            Path target = mavenRepoRoot.resolve(name);
+            Files.createDirectories(target.getParent());
+            try (InputStream in = options.getIoStats().count(patch.newInputStream(name))) {
+                options.getIoStats().written(Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING));
+            }
+        }
+    }
+
+    @Override
+    public void installInParent(String name, Path source) throws IOException {
+        super.installInParent(name, source);
+        Files.copy(source, repoParentDir.resolve(name));
+    }
+
+    @Override
+    public void save(ZipSink output) throws IOException {
+        options.getListener().info("Zipping " + repoParentDir + " to " + output);
+        try (RepositoryZipWriter writer = new RepositoryZipWriter(output, options)) {
+            writer.addDirectoryContent(repoWorkDir);
+            writer.printSummary();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.jboss.galleon.universe.FeaturePackLocation;
+import org.jboss.galleon.universe.FeaturePackLocation.FPID;
+
+/**
+ * On disk cache of the feature-pack metadata, keyed by the SHA-1 of the
+ * zipped feature-pack. Entries are stored in a deflated binary form: producer
+ * FPID, patch flag then the artifact versions. Zips that are not galleon
+ * feature-packs are cached too, so they are not read again. Entries are also
+ * kept in memory, so patchers that share a cache in the same JVM read each
+ * feature-pack once. The memory can be bounded, the least recently used
+ * entries are then evicted. Without a directory, the cache is memory only.
+ *
+ * @author jdenise
+ */
+final class FeaturePackCache {
+
+    private static final int MAGIC = 0x47465043;
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".fpc";
+
+    /**
+     * Cached for the zips that are not galleon feature-packs.
+     */
+    static final FeaturePackMetadata NOT_A_FEATURE_PACK = new FeaturePackMetadata(null, false, Collections.emptyMap());
+
+    private final Path dir;
+    private final PatcherListener listener;
+    private final Map<String, FeaturePackMetadata> memory;
+
+    FeaturePackCache(Path dir, PatcherListener listener) throws IOException {
+        this(dir, listener, 0);
+    }
+
+    /**
+     * @param maxEntries The number of entries kept in memory, 0 for no
+     * limit.
+     */
+    FeaturePackCache(Path dir, PatcherListener listener, int maxEntries) throws IOException {
+        this.dir = dir;
+        this.listener = listener;
+        if (maxEntries > 0) {
+            memory = Collections.synchronizedMap(new LinkedHashMap<String, FeaturePackMetadata>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FeaturePackMetadata> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+        } else {
+            memory = new ConcurrentHashMap<>();
+        }
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+    }
+
+    /**
+     * @return The cached metadata, {@link #NOT_A_FEATURE_PACK} or null if not
+     * cached (or if the cached file is not readable).
+     */
+    FeaturePackMetadata get(String sha1) {
+        FeaturePackMetadata metadata = memory.get(sha1);
+        if (metadata != null || dir == null) {
+            return metadata;
+        }
+        Path file = dir.resolve(sha1 + SUFFIX);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!in.readBoolean()) {
+                memory.put(sha1, NOT_A_FEATURE_PACK);
+                return NOT_A_FEATURE_PACK;
+            }
+            FPID producer = FeaturePackLocation.fromString(in.readUTF()).getFPID();
+            boolean patch = in.readBoolean();
+            int size = in.readInt();
+            Map<String, ArtifactCoordinate> versionProps = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                versionProps.put(ArtifactCoordinate.intern(in.readUTF()), ArtifactCoordinate.parse(in.readUTF()));
+            }
+            metadata = new FeaturePackMetadata(producer, patch, versionProps);
+            memory.put(sha1, metadata);
+            return metadata;
+        } catch (Exception ex) {
+            listener.warning("Ignoring invalid feature-pack cache entry " + file + ": " + ex);
+            return null;
+        }
+    }
+
+    void put(String sha1, FeaturePackMetadata metadata) throws IOException {
+        memory.put(sha1, metadata);
+        if (dir == null) {
+            return;
+        }
+        Path tmp = Files.createTempFile(dir, sha1, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeBoolean(metadata != NOT_A_FEATURE_PACK);
+                if (metadata != NOT_A_FEATURE_PACK) {
+                    out.writeUTF(metadata.getProducer().toString());
+                    out.writeBoolean(metadata.isPatch());
+                    out.writeInt(metadata.getVersionProps().size());
+                    for (Map.Entry<String, ArtifactCoordinate> entry : metadata.getVersionProps().entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        out.writeUTF(entry.getValue().toString());
+                    }
+                }
+            }
+            Files.move(tmp, dir.resolve(sha1 + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
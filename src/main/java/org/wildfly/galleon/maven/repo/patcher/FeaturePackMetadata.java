@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jboss.galleon.spec.FeaturePackSpec;
+import org.jboss.galleon.universe.FeaturePackLocation.FPID;
+import org.jboss.galleon.xml.FeaturePackXmlParser;
+
+/**
+ * The content of a galleon feature-pack that matters to the patcher. Only the
+ * feature-pack.xml and artifact-versions.properties entries are read from
+ * the zipped feature-pack, nothing is extracted. A zip that contains a
+ * feature-pack.xml entry is a galleon feature-pack. When the feature-pack
+ * can be read with random access, the entries are found in its central
+ * directory and the other entries are not read.
+ *
+ * @author jdenise
+ */
+final class FeaturePackMetadata {
+
+    static final String FEATURE_PACK_XML = "feature-pack.xml";
+    static final String ARTIFACT_VERSIONS = "resources/wildfly/artifact-versions.properties";
+
+    private final FPID producer;
+    private final boolean patch;
+    private final Map<String, ArtifactCoordinate> versionProps;
+
+    FeaturePackMetadata(FPID producer, boolean patch, Map<String, ArtifactCoordinate> versionProps) {
+        this.producer = producer;
+        this.patch = patch;
+        this.versionProps = versionProps;
+    }
+
+    /**
+     * @return The metadata or null if the zip is not a galleon feature-pack.
+     */
+    static FeaturePackMetadata read(SeekableByteChannel fpChannel, String fpName) throws Exception {
+        ZipFile zip;
+        try {
+            zip = new ZipFile(fpChannel, fpName, "UTF8", true);
+        } catch (IOException ex) {
+            // Not a zip, can't be a galleon feature-pack.
+            fpChannel.close();
+            return null;
+        }
+        try {
+            ZipArchiveEntry specEntry = zip.getEntry(FEATURE_PACK_XML);
+            if (specEntry == null) {
+                return null;
+            }
+            byte[] spec;
+            try (InputStream in = zip.getInputStream(specEntry)) {
+                spec = readEntry(in);
+            }
+            byte[] props = null;
+            ZipArchiveEntry propsEntry = zip.getEntry(ARTIFACT_VERSIONS);
+            if (propsEntry != null) {
+                try (InputStream in = zip.getInputStream(propsEntry)) {
+                    props = readEntry(in);
+                }
+            }
+            return parse(spec, props, fpName);
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Read a feature-pack that can't be read with random access, the entries
+     * located before the metadata entries are read too.
+     *
+     * @return The metadata or null if the zip is not a galleon feature-pack.
+     */
+    static FeaturePackMetadata read(InputStream fpStream, String fpName) throws Exception {
+        byte[] spec = null;
+        byte[] props = null;
+        try (ZipInputStream zip = new ZipInputStream(fpStream)) {
+            ZipEntry entry = zip.getNextEntry();
+            while (entry != null && (spec == null || props == null)) {
+                if (FEATURE_PACK_XML.equals(entry.getName())) {
+                    spec = readEntry(zip);
+                } else if (ARTIFACT_VERSIONS.equals(entry.getName())) {
+                    props = readEntry(zip);
+                }
+                entry = zip.getNextEntry();
+            }
+        }
+        if (spec == null) {
+            return null;
+        }
+        return parse(spec, props, fpName);
+    }
+
+    private static FeaturePackMetadata parse(byte[] spec, byte[] props, String fpName) throws Exception {
+        FeaturePackSpec fpSpec = FeaturePackXmlParser.getInstance().parse(newReader(spec));
+        // A feature-pack without artifact versions has nothing to patch.
+        Map<String, ArtifactCoordinate> versionProps = props == null ? new HashMap<>() : parseProperties(props, fpName);
+        return new FeaturePackMetadata(fpSpec.getFPID(), fpSpec.isPatch(), versionProps);
+    }
+
+    private static byte[] readEntry(InputStream zip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = zip.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, ArtifactCoordinate> parseProperties(byte[] props, String fpName) throws Exception {
+        try (BufferedReader reader = newReader(props)) {
+            return ArtifactUtils.readArtifactVersions(reader, fpName);
+        }
+    }
+
+    private static BufferedReader newReader(byte[] content) {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The same metadata without the artifact versions.
+     */
+    FeaturePackMetadata withoutVersionProps() {
+        return new FeaturePackMetadata(producer, patch, Collections.emptyMap());
+    }
+
+    /**
+     * @return the producer
+     */
+    FPID getProducer() {
+        return producer;
+    }
+
+    /**
+     * @return true if the feature-pack is a patch.
+     */
+    boolean isPatch() {
+        return patch;
+    }
+
+    /**
+     * @return the versionProps
+     */
+    Map<String, ArtifactCoordinate> getVersionProps() {
+        return versionProps;
+    }
+}
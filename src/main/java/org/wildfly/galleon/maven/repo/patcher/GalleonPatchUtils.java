@@ -16,18 +16,17 @@
  */
 package org.wildfly.galleon.maven.repo.patcher;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import org.jboss.galleon.spec.FeaturePackSpec;
 import org.jboss.galleon.universe.FeaturePackLocation.FPID;
-import org.jboss.galleon.util.ZipUtils;
-import org.jboss.galleon.xml.FeaturePackXmlParser;
 import org.jboss.galleon.xml.FeaturePackXmlWriter;
 
 /**
@@ -36,24 +35,28 @@ import org.jboss.galleon.xml.FeaturePackXmlWriter;
  */
 final class GalleonPatchUtils {
 
-    static String createPatchesFile(Path repoDir, List<FPID> createdPatchesGAV) throws UnsupportedEncodingException, IOException {
+    static final String PATCHES_FILE = "patches.xml";
+
+    static String createPatchesFile(Path patchesFile, List<FPID> createdPatchesGAV) throws UnsupportedEncodingException, IOException {
+        Set<String> ids = new TreeSet<>();
+        for (FPID gav : createdPatchesGAV) {
+            ids.add(gav.toString());
+        }
         StringBuilder builder = new StringBuilder();
         builder.append("<patches>").append("\n");
-        for (FPID gav : createdPatchesGAV) {
-            builder.append("<patch id=\"" + gav + "\"/>").append("\n");
+        for (String id : ids) {
+            builder.append("<patch id=\"" + id + "\"/>").append("\n");
         }
         builder.append("</patches>");
-        Path patchesFile = repoDir.resolve("patches.xml");
         Files.write(patchesFile, builder.toString().getBytes("UTF-8"));
         return builder.toString();
     }
 
-    static Path createPatch(Path tmpDir, Path fpDir, Map<String, String> versionProps, FPID patchGav, String artifactId, String patchVersion) throws Exception {
-        Path origSpec = fpDir.resolve("feature-pack.xml");
-        Path patchDir = tmpDir.resolve("patch-" + fpDir.getFileName());
+    static Path createPatch(Path tmpDir, String fpName, FPID forProducer, Map<String, ArtifactCoordinate> versionProps, FPID patchGav, String artifactId, String patchVersion,
+            PatcherOptions options) throws Exception {
+        Path patchDir = tmpDir.resolve("patch-" + fpName);
         Files.createDirectories(patchDir);
         Path patchSpecPath = patchDir.resolve("feature-pack.xml");
-        FPID forProducer = getProducer(origSpec);
         FeaturePackSpec sepc = FeaturePackSpec.builder(patchGav).setPatchFor(forProducer).build();
         FeaturePackXmlWriter.getInstance().write(sepc, patchSpecPath);
 
@@ -63,13 +66,14 @@ final class GalleonPatchUtils {
         ArtifactUtils.storeArtifactVersions(versionProps, propsFile);
 
         Path patchFile = tmpDir.resolve(artifactId + "-" + patchVersion + ".zip");
-        ZipUtils.zip(patchDir, patchFile);
+        // Checksums are computed while the zip is written. Patches are built concurrently, a single thread per patch.
+        Checksums checksums = new Checksums();
+        try (RepositoryZipWriter writer = new RepositoryZipWriter(checksums.wrap(new BufferedOutputStream(Files.newOutputStream(patchFile))),
+                options, 1)) {
+            writer.addDirectoryContent(patchDir);
+        }
+        checksums.writeFiles(patchFile);
+        options.getIoStats().written(Files.size(patchFile));
         return patchFile;
     }
-
-    private static FPID getProducer(Path path) throws Exception {
-        FileReader fileReader = new FileReader(path.toFile());
-        FeaturePackSpec spec = FeaturePackXmlParser.getInstance().parse(new BufferedReader(fileReader));
-        return spec.getFPID();
-    }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Append the metrics of each run to a file, one JSON object per line, so the
+ * runs of a batch or of the patch service, and successive runs, end up in
+ * the same report.
+ *
+ * @author jdenise
+ */
+final class JsonMetricsReporter implements MetricsReporter {
+
+    private final Path file;
+
+    JsonMetricsReporter(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void report(List<PhaseMetrics> phases, boolean succeeded) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"timestamp\":").append(System.currentTimeMillis());
+        builder.append(",\"succeeded\":").append(succeeded);
+        builder.append(",\"phases\":[");
+        for (int i = 0; i < phases.size(); i++) {
+            PhaseMetrics metrics = phases.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"phase\":\"").append(metrics.getPhase()).append('"');
+            builder.append(",\"wallTimeNanos\":").append(metrics.getWallTimeNanos());
+            builder.append(",\"cpuTimeNanos\":").append(metrics.getCpuTimeNanos());
+            builder.append(",\"bytesRead\":").append(metrics.getBytesRead());
+            builder.append(",\"bytesWritten\":").append(metrics.getBytesWritten());
+            builder.append(",\"entries\":").append(metrics.getEntries());
+            builder.append(",\"peakHeapBytes\":").append(metrics.getPeakHeapBytes());
+            builder.append('}');
+        }
+        builder.append("]}");
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            writer.write(builder.toString());
+            writer.newLine();
+        }
+    }
+}
@@ -17,54 +17,97 @@
 package org.wildfly.galleon.maven.repo.patcher;
 
 import java.nio.file.Path;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.jboss.galleon.universe.FeaturePackLocation.FPID;
 
 /**
+ * Record what is done during a run, then build the {@link PatchResult}. In
+ * bounded memory mode, the artifacts and files are reported to the listener
+ * as they are handled instead of being recorded, only the created patches
+ * are kept.
  *
  * @author jdenise
  */
 public class Log {
 
-    private final StringBuilder addedMessages = new StringBuilder();
-    private final StringBuilder deletedMessages = new StringBuilder();
-    private final StringBuilder patchMessages = new StringBuilder();
+    // Null if everything is recorded.
+    private final PatcherListener listener;
+    private final List<PatchResult.CreatedPatch> patches = new ArrayList<>();
+    private final Map<String, String> skipped = new LinkedHashMap<>();
+    private final List<String> added = new ArrayList<>();
+    private final List<String> deletedFiles = new ArrayList<>();
+    private final List<String> deletedDirs = new ArrayList<>();
+    private Map<String, String> patchedArtifacts;
 
-    public Log() {
-        addedMessages.append("Added artifacts:").append("\n");
+    Log() {
+        this(null);
+    }
 
-        deletedMessages.append("Deleted artifacts:").append("\n");
-        patchMessages.append("Created patches:").append("\n");
+    /**
+     * @param listener Receives the artifacts and files instead of recording
+     * them, null to record them.
+     */
+    Log(PatcherListener listener) {
+        this.listener = listener;
     }
 
-    void addedArtifacts(Set<Path> patchedFiles) {
+    void addedArtifacts(Iterable<Path> patchedFiles) {
         for (Path p : patchedFiles) {
-            addedMessages.append(" - " + p.getParent() + "/*").append("\n");
+            String name = AbstractMavenRepository.toEntryName(p);
+            if (listener == null) {
+                added.add(name);
+            } else {
+                listener.info("Added artifact " + name);
+            }
         }
     }
 
     void addPatch(FPID patchGav, Path fpFile) {
-        patchMessages.append(" * patch " + patchGav + " for " + fpFile.getFileName()).append("\n");
+        patchedArtifacts = new LinkedHashMap<>();
+        patches.add(new PatchResult.CreatedPatch(patchGav.toString(), fpFile.getFileName().toString(), patchedArtifacts));
+        if (listener != null) {
+            listener.info("Created patch " + patchGav + " for " + fpFile.getFileName());
+        }
+    }
+
+    void addPatchedArtifact(ArtifactCoordinate old, ArtifactCoordinate newArtifact) {
+        if (listener == null) {
+            patchedArtifacts.put(old.toString(), newArtifact.toString());
+        } else {
+            listener.info("Patched artifact " + old + " => " + newArtifact);
+        }
     }
 
-    void addPatchedArtifact(String old, String newArtifact) {
-        patchMessages.append("   - " + old + " => " + newArtifact).append("\n");
+    void addSkippedArtifact(ArtifactCoordinate old, ArtifactCoordinate newArtifact) {
+        if (listener == null) {
+            skipped.put(newArtifact.toString(), old.toString());
+        } else {
+            listener.info("Skipped artifact " + newArtifact + ", it has the same content as " + old);
+        }
     }
 
     void addDeletedArtifact(Path oldPath) {
-        deletedMessages.append(" - " + oldPath).append("\n");
+        String name = AbstractMavenRepository.toEntryName(oldPath);
+        if (listener == null) {
+            deletedFiles.add(name);
+        } else {
+            listener.info("Deleted " + name);
+        }
     }
 
     void addDeletedDir(Path oldPath) {
-        deletedMessages.append(" - " + oldPath + "/*").append("\n");
+        String name = AbstractMavenRepository.toEntryName(oldPath);
+        if (listener == null) {
+            deletedDirs.add(name);
+        } else {
+            listener.info("Deleted " + name + "/*");
+        }
     }
 
-    void print(String patchesContent) {
-        System.out.println("\n");
-        System.out.println(patchMessages.toString());
-        System.out.println(addedMessages.toString());
-        System.out.println(deletedMessages.toString());
-        System.out.println("Content of patches.xml:");
-        System.out.println(patchesContent);
+    PatchResult toResult(String patchesContent, List<PhaseMetrics> phases) {
+        return new PatchResult(patches, skipped, added, deletedFiles, deletedDirs, patchesContent, phases, listener != null);
     }
 }
@@ -21,6 +21,8 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -35,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import org.jboss.galleon.spec.FeaturePackSpec;
 import org.jboss.galleon.universe.FeaturePackLocation;
 import org.jboss.galleon.universe.FeaturePackLocation.FPID;
@@ -50,12 +53,90 @@ import org.jboss.galleon.xml.FeaturePackXmlWriter;
  */
 public final class Main {
 
+    static final String STREAMING = "--streaming";
+    static final String BOUNDED_MEMORY = "--bounded-memory";
+    static final String FP_CACHE = "--fp-cache=";
+    static final String REPO_INDEX = "--repo-index";
+    static final String THREADS = "--threads=";
+    static final String COMPRESSION_LEVEL = "--compression-level=";
+    static final String DELTA = "--delta";
+    static final String APPLY_DELTA = "--apply-delta";
+    static final String REPRODUCIBLE = "--reproducible";
+    static final String BATCH = "--batch=";
+    static final String JOBS = "--jobs=";
+    static final String DAEMON = "--daemon=";
+    static final String CACHE_SIZE = "--cache-size=";
+    static final String METRICS = "--metrics=";
+    static final int DEFAULT_CACHE_SIZE = 4;
+    static final String WORK_DIR = "tool-work-dir";
+
     public static void main(String[] args) throws Exception {
-        if (args.length != 3) {
+        PatcherOptions options = new PatcherOptions().setWorkDir(Paths.get(WORK_DIR)).setListener(ConsoleListener.INSTANCE);
+        List<String> arguments = new ArrayList<>();
+        boolean applyDelta = false;
+        Path batch = null;
+        int jobs = 1;
+        Integer daemonPort = null;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        for (String arg : args) {
+            if (arg.startsWith(DAEMON)) {
+                daemonPort = Integer.parseInt(arg.substring(DAEMON.length()));
+            } else if (arg.startsWith(METRICS)) {
+                options.setMetricsReporter(MetricsReporter.json(Paths.get(arg.substring(METRICS.length()))));
+            } else if (arg.startsWith(CACHE_SIZE)) {
+                cacheSize = Integer.parseInt(arg.substring(CACHE_SIZE.length()));
+            } else if (arg.startsWith(BATCH)) {
+                batch = Paths.get(arg.substring(BATCH.length()));
+            } else if (arg.startsWith(JOBS)) {
+                jobs = Integer.parseInt(arg.substring(JOBS.length()));
+                if (jobs < 1) {
+                    throw new Exception("Invalid number of jobs " + jobs);
+                }
+            } else if (APPLY_DELTA.equals(arg)) {
+                applyDelta = true;
+            } else if (DELTA.equals(arg)) {
+                options.setDelta(true);
+            } else if (REPRODUCIBLE.equals(arg)) {
+                options.setReproducible(true);
+            } else if (STREAMING.equals(arg)) {
+                options.setStreaming(true);
+            } else if (BOUNDED_MEMORY.equals(arg)) {
+                options.setBoundedMemory(true);
+            } else if (REPO_INDEX.equals(arg)) {
+                options.setPersistIndex(true);
+            } else if (arg.startsWith(THREADS)) {
+                options.setParallelism(Integer.parseInt(arg.substring(THREADS.length())));
+            } else if (arg.startsWith(COMPRESSION_LEVEL)) {
+                options.setCompressionLevel(Integer.parseInt(arg.substring(COMPRESSION_LEVEL.length())));
+            } else if (arg.startsWith(FP_CACHE)) {
+                options.setFeaturePackCache(Paths.get(arg.substring(FP_CACHE.length())));
+            } else {
+                arguments.add(arg);
+            }
+        }
+        if (daemonPort != null) {
+            if (!arguments.isEmpty()) {
+                throw new Exception("Error, no argument expected in daemon mode, jobs are received from clients");
+            }
+            runDaemon(daemonPort, options, jobs, cacheSize);
+            return;
+        }
+        if (batch != null) {
+            if (!arguments.isEmpty()) {
+                throw new Exception("Error, no argument expected in batch mode, jobs are read from " + batch);
+            }
+            Batch.run(batch, options, jobs);
+            return;
+        }
+        if (applyDelta) {
+            applyDelta(arguments, options);
+            return;
+        }
+        if (arguments.size() != 3) {
             System.err.println("Error, 3 arguments expected: zipped repo, zipped repo patch, generated zipped repo file name");
         }
-        Path originalMavenRepo = Paths.get(args[0]);
-        Path repoPatch = Paths.get(args[1]);
+        Path originalMavenRepo = Paths.get(arguments.get(0));
+        Path repoPatch = Paths.get(arguments.get(1));
 
         if (!Files.exists(originalMavenRepo)) {
             throw new Exception("Original repo doesn't exist");
@@ -65,8 +146,45 @@ public final class Main {
             throw new Exception("Repo patch doesn't exist");
         }
 
-        Path outputFile = Paths.get(args[2]);
+        Path outputFile = Paths.get(arguments.get(2));
+
+        PatchResult result = new Patcher(originalMavenRepo, repoPatch, outputFile, options).patch();
+        System.out.println("\n");
+        System.out.println(result);
+        System.out.println("Phases:");
+        for (PhaseMetrics metrics : result.getPhaseMetrics()) {
+            System.out.println(" - " + metrics);
+        }
+    }
 
-        new Patcher(originalMavenRepo, repoPatch, outputFile).patch();
+    /**
+     * Serve jobs on the loopback interface until the JVM is stopped.
+     */
+    private static void runDaemon(int port, PatcherOptions options, int jobs, int cacheSize) throws Exception {
+        PatchServer server = new PatchServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), options, jobs, cacheSize);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException ex) {
+                System.err.println("Error stopping the patch service: " + ex);
+            }
+        }));
+        server.start();
+        new CountDownLatch(1).await();
+    }
+
+    private static void applyDelta(List<String> arguments, PatcherOptions options) throws Exception {
+        if (arguments.size() != 3) {
+            throw new Exception("Error, 3 arguments expected: zipped repo, zipped repo delta, generated zipped repo file name");
+        }
+        Path originalMavenRepo = Paths.get(arguments.get(0));
+        Path delta = Paths.get(arguments.get(1));
+        if (!Files.exists(originalMavenRepo)) {
+            throw new Exception("Original repo doesn't exist");
+        }
+        if (!Files.exists(delta)) {
+            throw new Exception("Repo delta doesn't exist");
+        }
+        RepositoryDelta.apply(originalMavenRepo, delta, Paths.get(arguments.get(2)), options);
     }
 }
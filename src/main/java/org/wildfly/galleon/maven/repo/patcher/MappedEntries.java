@@ -0,0 +1,483 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import org.jboss.galleon.util.IoUtils;
+
+/**
+ * The entries of a zip central directory, sorted by name and kept in
+ * memory-mapped files: a table of fixed size records, the names and the
+ * position in the table of each entry in the central directory order.
+ * <p>
+ * The central directory is streamed and sorted externally: sorted runs of
+ * {@link #RUN_SIZE} entries are written to disk then merged, so the heap
+ * holds at most one run whatever the number of entries. Names are compared
+ * as UTF-8 bytes.
+ *
+ * @author jdenise
+ */
+final class MappedEntries {
+
+    private static final int RUN_SIZE = 32 * 1024;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CFH_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIZE = 20;
+    private static final int CFH_SIZE = 46;
+    private static final int LFH_SIZE = 30;
+    private static final int ZIP64_EXTRA = 1;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    // Record layout.
+    private static final int NAME_OFFSET = 0;
+    private static final int NAME_LENGTH = 4;
+    private static final int METHOD = 8;
+    private static final int CRC = 10;
+    private static final int DOS_TIME = 14;
+    private static final int SIZE = 18;
+    private static final int COMPRESSED_SIZE = 26;
+    private static final int DATA_OFFSET = 34;
+    private static final int EXTERNAL_ATTRIBUTES = 42;
+    private static final int VERSION_MADE_BY = 46;
+    private static final int RECORD_SIZE = 48;
+
+    private final Path dir;
+    private final int size;
+    private final ByteBuffer records;
+    private final ByteBuffer names;
+    private final ByteBuffer order;
+
+    private MappedEntries(Path dir, int size, ByteBuffer records, ByteBuffer names, ByteBuffer order) {
+        this.dir = dir;
+        this.size = size;
+        this.records = records;
+        this.names = names;
+        this.order = order;
+    }
+
+    /**
+     * Stream the central directory of a zip.
+     *
+     * @param workDir The directory where the mapped files are created.
+     * @param consumer Receives the names in the central directory order.
+     */
+    static MappedEntries build(SeekableByteChannel channel, Path workDir, Object zip, Consumer<String> consumer) throws IOException {
+        Files.createDirectories(workDir);
+        Path dir = Files.createTempDirectory(workDir, "entries");
+        try {
+            long[] centralDirectory = locateCentralDirectory(channel, zip);
+            long count = centralDirectory[0];
+            if (count > Integer.MAX_VALUE / RECORD_SIZE) {
+                throw new IOException("Too many entries in " + zip);
+            }
+            List<Path> runs = new ArrayList<>();
+            List<Record> run = new ArrayList<>();
+            ByteBuffer localHeader = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    MappedZipArchive.newInputStream(channel, centralDirectory[2], centralDirectory[1], false), 64 * 1024))) {
+                for (int ordinal = 0; ordinal < count; ordinal++) {
+                    Record record = Record.readCentralDirectory(in, ordinal, zip);
+                    consumer.accept(new String(record.name, StandardCharsets.UTF_8));
+                    localHeader.clear();
+                    MappedZipArchive.readFully(channel, localHeader, record.dataOffset + 26);
+                    record.dataOffset += LFH_SIZE + (localHeader.getShort(0) & 0xFFFF) + (localHeader.getShort(2) & 0xFFFF);
+                    run.add(record);
+                    if (run.size() == RUN_SIZE) {
+                        runs.add(writeRun(dir, run));
+                        run.clear();
+                    }
+                }
+            }
+            if (!run.isEmpty()) {
+                runs.add(writeRun(dir, run));
+                run.clear();
+            }
+            return merge(dir, runs, (int) count, zip);
+        } catch (IOException | RuntimeException ex) {
+            IoUtils.recursiveDelete(dir);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return The number of entries, the size and the offset of the central
+     * directory.
+     */
+    private static long[] locateCentralDirectory(SeekableByteChannel channel, Object zip) throws IOException {
+        long length = channel.size();
+        int tail = (int) Math.min(length, EOCD_SIZE + 0xFFFF);
+        ByteBuffer buffer = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+        MappedZipArchive.readFully(channel, buffer, length - tail);
+        int eocd = -1;
+        for (int i = tail - EOCD_SIZE; i >= 0; i--) {
+            if (buffer.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException(zip + " is not a zip, no end of central directory found");
+        }
+        long eocdPosition = length - tail + eocd;
+        if (eocdPosition >= ZIP64_EOCD_LOCATOR_SIZE) {
+            ByteBuffer locator = ByteBuffer.allocate(ZIP64_EOCD_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            MappedZipArchive.readFully(channel, locator, eocdPosition - ZIP64_EOCD_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                ByteBuffer zip64 = ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN);
+                MappedZipArchive.readFully(channel, zip64, locator.getLong(8));
+                if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                    throw new IOException("Invalid zip64 end of central directory in " + zip);
+                }
+                return new long[]{zip64.getLong(32), zip64.getLong(40), zip64.getLong(48)};
+            }
+        }
+        return new long[]{buffer.getShort(eocd + 10) & 0xFFFF, buffer.getInt(eocd + 12) & ZIP64_MAGIC,
+            buffer.getInt(eocd + 16) & ZIP64_MAGIC};
+    }
+
+    private static Path writeRun(Path dir, List<Record> run) throws IOException {
+        run.sort((r1, r2) -> compare(r1.name, r2.name));
+        Path file = Files.createTempFile(dir, "run", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            out.writeInt(run.size());
+            for (Record record : run) {
+                record.write(out);
+            }
+        }
+        return file;
+    }
+
+    private static MappedEntries merge(Path dir, List<Path> runs, int count, Object zip) throws IOException {
+        Path recordsFile = dir.resolve("records.bin");
+        Path namesFile = dir.resolve("names.bin");
+        Path orderFile = dir.resolve("order.bin");
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((r1, r2) -> compare(r1.current.name, r2.current.name));
+        try (RandomAccessFile orderRaf = new RandomAccessFile(orderFile.toFile(), "rw");
+                DataOutputStream recordsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(recordsFile), 64 * 1024));
+                DataOutputStream namesOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(namesFile), 64 * 1024))) {
+            orderRaf.setLength((long) count * 4);
+            MappedByteBuffer order = orderRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) count * 4);
+            try {
+                for (Path run : runs) {
+                    RunReader reader = new RunReader(run);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+                long nameOffset = 0;
+                int position = 0;
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    Record record = reader.current;
+                    if (nameOffset + record.name.length > Integer.MAX_VALUE) {
+                        throw new IOException("Too many entries in " + zip);
+                    }
+                    recordsOut.writeInt((int) nameOffset);
+                    recordsOut.writeInt(record.name.length);
+                    recordsOut.writeShort(record.method);
+                    recordsOut.writeInt(record.crc);
+                    recordsOut.writeInt(record.dosTime);
+                    recordsOut.writeLong(record.size);
+                    recordsOut.writeLong(record.compressedSize);
+                    recordsOut.writeLong(record.dataOffset);
+                    recordsOut.writeInt((int) record.externalAttributes);
+                    recordsOut.writeShort(record.versionMadeBy);
+                    namesOut.write(record.name);
+                    nameOffset += record.name.length;
+                    order.putInt(record.ordinal * 4, position);
+                    position += 1;
+                    if (reader.next()) {
+                        queue.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            } finally {
+                for (RunReader reader : queue) {
+                    reader.close();
+                }
+            }
+            order.force();
+        }
+        for (Path run : runs) {
+            Files.delete(run);
+        }
+        return new MappedEntries(dir, count, map(recordsFile), map(namesFile), map(orderFile));
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int compare(byte[] n1, byte[] n2) {
+        int length = Math.min(n1.length, n2.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (n1[i] & 0xFF) - (n2[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return n1.length - n2.length;
+    }
+
+    private int compare(int i, byte[] name) {
+        int offset = records.getInt(i * RECORD_SIZE + NAME_OFFSET);
+        int length = records.getInt(i * RECORD_SIZE + NAME_LENGTH);
+        int min = Math.min(length, name.length);
+        for (int k = 0; k < min; k++) {
+            int diff = (names.get(offset + k) & 0xFF) - (name[k] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - name.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The position of the entry, or (-(insertion point) - 1) if not
+     * found.
+     */
+    int find(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, bytes);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @return The position in the table of the entry found at this position
+     * in the central directory.
+     */
+    int getPosition(int ordinal) {
+        return order.getInt(ordinal * 4);
+    }
+
+    String getName(int i) {
+        byte[] bytes = new byte[records.getInt(i * RECORD_SIZE + NAME_LENGTH)];
+        ByteBuffer buffer = names.duplicate();
+        buffer.position(records.getInt(i * RECORD_SIZE + NAME_OFFSET));
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int getMethod(int i) {
+        return records.getShort(i * RECORD_SIZE + METHOD) & 0xFFFF;
+    }
+
+    long getCrc(int i) {
+        return records.getInt(i * RECORD_SIZE + CRC) & ZIP64_MAGIC;
+    }
+
+    long getDosTime(int i) {
+        return records.getInt(i * RECORD_SIZE + DOS_TIME) & ZIP64_MAGIC;
+    }
+
+    long getSize(int i) {
+        return records.getLong(i * RECORD_SIZE + SIZE);
+    }
+
+    long getCompressedSize(int i) {
+        return records.getLong(i * RECORD_SIZE + COMPRESSED_SIZE);
+    }
+
+    long getDataOffset(int i) {
+        return records.getLong(i * RECORD_SIZE + DATA_OFFSET);
+    }
+
+    long getExternalAttributes(int i) {
+        return records.getInt(i * RECORD_SIZE + EXTERNAL_ATTRIBUTES) & ZIP64_MAGIC;
+    }
+
+    int getVersionMadeBy(int i) {
+        return records.getShort(i * RECORD_SIZE + VERSION_MADE_BY) & 0xFFFF;
+    }
+
+    /**
+     * Delete the files, the mapped buffers are released once garbage
+     * collected.
+     */
+    void delete() {
+        IoUtils.recursiveDelete(dir);
+    }
+
+    private static final class Record {
+
+        private final byte[] name;
+        private final int ordinal;
+        private int method;
+        private int crc;
+        private int dosTime;
+        private long size;
+        private long compressedSize;
+        // The local header offset until the local header is read.
+        private long dataOffset;
+        private long externalAttributes;
+        private int versionMadeBy;
+
+        private Record(byte[] name, int ordinal) {
+            this.name = name;
+            this.ordinal = ordinal;
+        }
+
+        private static Record readCentralDirectory(DataInputStream in, int ordinal, Object zip) throws IOException {
+            byte[] header = new byte[CFH_SIZE];
+            in.readFully(header);
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != CFH_SIGNATURE) {
+                throw new IOException("Invalid central directory entry " + ordinal + " in " + zip);
+            }
+            byte[] name = new byte[buffer.getShort(28) & 0xFFFF];
+            byte[] extra = new byte[buffer.getShort(30) & 0xFFFF];
+            in.readFully(name);
+            in.readFully(extra);
+            in.skipBytes(buffer.getShort(32) & 0xFFFF);
+            Record record = new Record(name, ordinal);
+            record.versionMadeBy = buffer.getShort(4) & 0xFFFF;
+            record.method = buffer.getShort(10) & 0xFFFF;
+            record.dosTime = buffer.getInt(12);
+            record.crc = buffer.getInt(16);
+            record.compressedSize = buffer.getInt(20) & ZIP64_MAGIC;
+            record.size = buffer.getInt(24) & ZIP64_MAGIC;
+            record.externalAttributes = buffer.getInt(38) & ZIP64_MAGIC;
+            record.dataOffset = buffer.getInt(42) & ZIP64_MAGIC;
+            ByteBuffer extraBuffer = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+            int i = 0;
+            while (i + 4 <= extra.length) {
+                int id = extraBuffer.getShort(i) & 0xFFFF;
+                int length = extraBuffer.getShort(i + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA) {
+                    // Only the values that don't fit in the header are present, in this order.
+                    int p = i + 4;
+                    if (record.size == ZIP64_MAGIC && p + 8 <= extra.length) {
+                        record.size = extraBuffer.getLong(p);
+                        p += 8;
+                    }
+                    if (record.compressedSize == ZIP64_MAGIC && p + 8 <= extra.length) {
+                        record.compressedSize = extraBuffer.getLong(p);
+                        p += 8;
+                    }
+                    if (record.dataOffset == ZIP64_MAGIC && p + 8 <= extra.length) {
+                        record.dataOffset = extraBuffer.getLong(p);
+                    }
+                }
+                i += 4 + length;
+            }
+            return record;
+        }
+
+        private static Record read(DataInputStream in) throws IOException {
+            byte[] name = new byte[in.readInt()];
+            in.readFully(name);
+            Record record = new Record(name, in.readInt());
+            record.method = in.readInt();
+            record.crc = in.readInt();
+            record.dosTime = in.readInt();
+            record.size = in.readLong();
+            record.compressedSize = in.readLong();
+            record.dataOffset = in.readLong();
+            record.externalAttributes = in.readLong();
+            record.versionMadeBy = in.readInt();
+            return record;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(ordinal);
+            out.writeInt(method);
+            out.writeInt(crc);
+            out.writeInt(dosTime);
+            out.writeLong(size);
+            out.writeLong(compressedSize);
+            out.writeLong(dataOffset);
+            out.writeLong(externalAttributes);
+            out.writeInt(versionMadeBy);
+        }
+    }
+
+    private static final class RunReader {
+
+        private final DataInputStream in;
+        private int remaining;
+        private Record current;
+
+        private RunReader(Path run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 64 * 1024));
+            try {
+                remaining = in.readInt();
+            } catch (EOFException ex) {
+                in.close();
+                throw ex;
+            }
+        }
+
+        private boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining -= 1;
+            current = Record.read(in);
+            return true;
+        }
+
+        private void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipUtil;
+
+/**
+ * A zip whose entries are not kept in the heap. The central directory is
+ * sorted into {@link MappedEntries}, entries are created when requested and
+ * their data is read at the offset recorded in the table. Used in bounded
+ * memory mode, the heap used to read a zip doesn't depend on its number of
+ * entries.
+ *
+ * @author jdenise
+ */
+final class MappedZipArchive extends ZipArchive {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final SeekableByteChannel channel;
+    private final MappedEntries entries;
+    private final RepositoryIndex index;
+
+    private MappedZipArchive(SeekableByteChannel channel, MappedEntries entries, RepositoryIndex index) {
+        this.channel = channel;
+        this.entries = entries;
+        this.index = index;
+    }
+
+    /**
+     * @param workDir The directory where the mapped files are created.
+     */
+    static MappedZipArchive open(ZipSource zip, Path workDir) throws Exception {
+        SeekableByteChannel channel = zip.openChannel();
+        try {
+            RepositoryIndex.Prefixes prefixes = new RepositoryIndex.Prefixes();
+            MappedEntries entries = MappedEntries.build(channel, workDir, zip, prefixes);
+            try {
+                return new MappedZipArchive(channel, entries, RepositoryIndex.of(prefixes, entries, zip));
+            } catch (Exception ex) {
+                entries.delete();
+                throw ex;
+            }
+        } catch (Exception ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return The index of the zip, backed by the same mapped files.
+     */
+    RepositoryIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    ZipArchiveEntry getEntry(String name) {
+        int i = entries.find(name);
+        return i < 0 ? null : new Entry(entries, i);
+    }
+
+    @Override
+    Enumeration<ZipArchiveEntry> getEntries() {
+        return new Enumeration<ZipArchiveEntry>() {
+            private int ordinal;
+
+            @Override
+            public boolean hasMoreElements() {
+                return ordinal < entries.size();
+            }
+
+            @Override
+            public ZipArchiveEntry nextElement() {
+                if (ordinal == entries.size()) {
+                    throw new NoSuchElementException();
+                }
+                return new Entry(entries, entries.getPosition(ordinal++));
+            }
+        };
+    }
+
+    @Override
+    InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+        Entry e = (Entry) entry;
+        if (e.getMethod() == ZipEntry.STORED) {
+            return newInputStream(channel, e.getDataOffset(), e.getCompressedSize(), false);
+        }
+        if (e.getMethod() != ZipEntry.DEFLATED) {
+            throw new IOException("Unsupported compression method " + e.getMethod() + " of " + e.getName());
+        }
+        // The inflater needs an extra byte to detect the end of the data.
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(newInputStream(channel, e.getDataOffset(), e.getCompressedSize(), true), inflater, BUFFER_SIZE) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    super.close();
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    InputStream getRawInputStream(ZipArchiveEntry entry) throws IOException {
+        Entry e = (Entry) entry;
+        return newInputStream(channel, e.getDataOffset(), e.getCompressedSize(), false);
+    }
+
+    @Override
+    SeekableByteChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            entries.delete();
+        }
+    }
+
+    /**
+     * Read at a position, a channel that is not a file channel is shared
+     * between the readers.
+     */
+    static void readFully(SeekableByteChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            while (buffer.hasRemaining()) {
+                if (fileChannel.read(buffer, position + buffer.position() - start) < 0) {
+                    throw new EOFException();
+                }
+            }
+        } else {
+            synchronized (channel) {
+                channel.position(position);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dummyByte true to append a 0 byte to the content.
+     */
+    static InputStream newInputStream(SeekableByteChannel channel, long position, long length, boolean dummyByte) {
+        return new InputStream() {
+            private final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, length + 1));
+            private long offset;
+            private boolean dummyRead = !dummyByte;
+
+            {
+                buffer.flip();
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    if (offset == length) {
+                        if (dummyRead) {
+                            return -1;
+                        }
+                        dummyRead = true;
+                        b[off] = 0;
+                        return 1;
+                    }
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), length - offset));
+                    readFully(channel, buffer, position + offset);
+                    offset += buffer.position();
+                    buffer.flip();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    private static final class Entry extends ZipArchiveEntry {
+
+        private Entry(MappedEntries entries, int i) {
+            super(entries.getName(i));
+            setMethod(entries.getMethod(i));
+            setCrc(entries.getCrc(i));
+            setSize(entries.getSize(i));
+            setCompressedSize(entries.getCompressedSize(i));
+            setTime(ZipUtil.dosToJavaTime(entries.getDosTime(i)));
+            setExternalAttributes(entries.getExternalAttributes(i));
+            setPlatform(entries.getVersionMadeBy(i) >> 8);
+            setDataOffset(entries.getDataOffset(i));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The maven repository being patched. All paths are relative to the
+ * maven-repository root directory.
+ *
+ * @author jdenise
+ */
+interface MavenRepository extends Closeable {
+
+    /**
+     * @return true if the file or directory exists in the repository.
+     */
+    boolean exists(Path path);
+
+    /**
+     * @return The direct children (files and directories) of a directory,
+     * sorted by name.
+     */
+    List<Path> list(Path dir) throws IOException;
+
+    /**
+     * @return All the files with the given suffix, sorted by path.
+     */
+    List<Path> listFiles(String suffix);
+
+    /**
+     * @return A stream to read the content of a repository file.
+     */
+    InputStream newInputStream(Path file) throws IOException;
+
+    /**
+     * @return A seekable channel to read the content of a repository file,
+     * null if the file can only be read as a stream (compressed in the zipped
+     * repository).
+     */
+    SeekableByteChannel newChannel(Path file) throws IOException;
+
+    void delete(Path file) throws IOException;
+
+    void deleteDir(Path dir) throws IOException;
+
+    /**
+     * Add (or replace) a file in the repository.
+     */
+    void install(Path file, Path source) throws IOException;
+
+    /**
+     * Add the files located in the maven repo patch.
+     *
+     * @param installed Accepts the entry names of the files to add.
+     */
+    void installAll(PatchRepository patch, Predicate<String> installed) throws IOException;
+
+    /**
+     * Add a file in the directory that contains the maven-repository root
+     * directory.
+     */
+    void installInParent(String name, Path source) throws IOException;
+
+    /**
+     * Generate the zipped repository.
+     */
+    void save(ZipSink output) throws IOException;
+
+    /**
+     * Generate an archive that only contains the changes: the added and
+     * replaced files plus the list of deleted entries.
+     */
+    void saveDelta(ZipSink output) throws IOException;
+}
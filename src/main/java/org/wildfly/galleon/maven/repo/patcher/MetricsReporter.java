@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Receive the metrics of each patcher run, once the run is done.
+ *
+ * @author jdenise
+ */
+public interface MetricsReporter {
+
+    /**
+     * @param phases The executed phases, in execution order. For a failed
+     * run, the last one is the phase that failed.
+     * @param succeeded false if the run failed.
+     */
+    void report(List<PhaseMetrics> phases, boolean succeeded) throws IOException;
+
+    /**
+     * @return A reporter that appends one JSON object per run to a file.
+     */
+    static MetricsReporter json(Path file) {
+        return new JsonMetricsReporter(file);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Unzip using random access to the zip central directory. All the directories
+ * are created first, then entries are spread over a pool of workers that
+ * each copy through their own buffer. Each worker gets a contiguous
+ * slice of the entries in the physical order, slices being balanced by
+ * compressed size.
+ *
+ * @author jdenise
+ */
+final class ParallelUnzip {
+
+    // The entries are read as streams, a heap buffer avoids the copies of a
+    // direct buffer behind a stream channel.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Weight of an entry in addition to its compressed size: the file creation.
+    private static final long ENTRY_COST = 4096;
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * @return the number of extracted bytes.
+     */
+    static long unzip(ZipFile zipFile, Path targetDir, PatcherOptions options) throws Exception {
+        int parallelism = options.getParallelism();
+        long start = System.nanoTime();
+        Path target = targetDir.toAbsolutePath().normalize();
+        List<ZipArchiveEntry> files = new ArrayList<>();
+        Set<Path> dirs = new TreeSet<>();
+        dirs.add(target);
+        Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry entry = entries.nextElement();
+            Path p = resolve(target, entry.getName());
+            if (entry.isDirectory()) {
+                dirs.add(p);
+            } else {
+                dirs.add(p.getParent());
+                files.add(entry);
+            }
+        }
+        // Sorted, so parents are created before their children.
+        for (Path dir : dirs) {
+            Files.createDirectories(dir);
+        }
+        int workers = Math.max(1, Math.min(parallelism, files.size()));
+        int[] bounds = slice(files, workers);
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            final int from = bounds[w];
+            final int to = bounds[w + 1];
+            tasks.add(() -> {
+                long size = 0;
+                for (ZipArchiveEntry entry : files.subList(from, to)) {
+                    size += extract(zipFile, entry, resolve(target, entry.getName()));
+                }
+                return size;
+            });
+        }
+        long size = 0;
+        ExecutorService executor = ParallelUtils.newExecutor(workers, "unzip");
+        try {
+            for (long s : ParallelUtils.invokeAll(executor, tasks)) {
+                size += s;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        options.getIoStats().read(size);
+        options.getIoStats().written(size);
+        options.getIoStats().entries(files.size());
+        options.getListener().info("Extracted " + files.size() + " files (" + size / (1024 * 1024) + " MB) in "
+                + millis + " ms with " + workers + " threads, " + (size * 1000 / millis) / (1024 * 1024) + " MB/s");
+        return size;
+    }
+
+    /**
+     * Cut the entries in slices of about the same compressed size, one large
+     * entry can make the next slices empty.
+     *
+     * @return The bounds of the slices, slice w is [bounds[w], bounds[w + 1]).
+     */
+    static int[] slice(List<ZipArchiveEntry> files, int workers) {
+        long total = 0;
+        for (ZipArchiveEntry entry : files) {
+            total += weight(entry);
+        }
+        int[] bounds = new int[workers + 1];
+        long cumulative = 0;
+        int w = 1;
+        for (int i = 0; i < files.size() && w < workers; i++) {
+            cumulative += weight(files.get(i));
+            // The slice w - 1 ends once it holds its share of the total.
+            while (w < workers && cumulative * workers >= total * w) {
+                bounds[w] = i + 1;
+                w += 1;
+            }
+        }
+        bounds[workers] = files.size();
+        return bounds;
+    }
+
+    private static long weight(ZipArchiveEntry entry) {
+        return Math.max(0, entry.getCompressedSize()) + ENTRY_COST;
+    }
+
+    private static Path resolve(Path targetDir, String name) throws IOException {
+        Path p = targetDir.resolve(name).normalize();
+        if (!p.startsWith(targetDir)) {
+            throw new IOException("Invalid zip entry " + name);
+        }
+        return p;
+    }
+
+    private static long extract(ZipFile zipFile, ZipArchiveEntry entry, Path target) throws IOException {
+        byte[] buffer = BUFFER.get();
+        long size = 0;
+        try (InputStream in = zipFile.getInputStream(entry);
+                OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        }
+        return size;
+    }
+}
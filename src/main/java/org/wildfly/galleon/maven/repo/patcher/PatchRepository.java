@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * The zipped maven repository patch. Only its central directory is read to
+ * find the patched artifacts, entries are then streamed once to their final
+ * destination.
+ *
+ * @author jdenise
+ */
+final class PatchRepository implements Closeable {
+
+    private final ZipArchive archive;
+    private final String rootPrefix;
+    // Files, relative to the maven-repository root, sorted by name.
+    private final List<String> files;
+
+    private PatchRepository(ZipArchive archive, RepositoryIndex index) {
+        this.archive = archive;
+        rootPrefix = index.getRootPrefix();
+        List<String> lst = new ArrayList<>();
+        for (int i = index.ceiling(rootPrefix); i < index.size() && index.getName(i).startsWith(rootPrefix); i++) {
+            String name = index.getName(i);
+            if (!name.endsWith("/")) {
+                lst.add(name.substring(rootPrefix.length()));
+            }
+        }
+        files = Collections.unmodifiableList(lst);
+    }
+
+    static PatchRepository newInstance(ZipSource repoPatch, PatcherOptions options) throws Exception {
+        options.getListener().info("Reading maven repo patch " + repoPatch);
+        if (options.isBoundedMemory()) {
+            MappedZipArchive archive = MappedZipArchive.open(repoPatch, options.getWorkDir());
+            return new PatchRepository(archive, archive.getIndex());
+        }
+        ZipFile zipFile = repoPatch.open();
+        try {
+            return new PatchRepository(ZipArchive.of(zipFile), RepositoryIndex.build(zipFile, repoPatch));
+        } catch (Exception ex) {
+            zipFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return All the files of the patch, relative to the maven-repository
+     * root, sorted by name.
+     */
+    List<String> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return The patched artifacts (jar and so files).
+     */
+    PathTrie getArtifacts() {
+        PathTrie artifacts = new PathTrie();
+        for (String name : files) {
+            Path p = Paths.get(name);
+            if (ArtifactUtils.isArtifact(p)) {
+                artifacts.add(p);
+            }
+        }
+        return artifacts;
+    }
+
+    ZipArchive getArchive() {
+        return archive;
+    }
+
+    ZipArchiveEntry getEntry(String name) {
+        return archive.getEntry(rootPrefix + name);
+    }
+
+    InputStream newInputStream(String name) throws IOException {
+        return archive.getInputStream(getEntry(name));
+    }
+
+    @Override
+    public void close() throws IOException {
+        archive.close();
+    }
+}
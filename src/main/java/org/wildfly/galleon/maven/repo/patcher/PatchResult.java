@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a patcher run has done. Artifacts are identified as in the galleon
+ * artifact versions (groupId:artifactId:version:classifier:type), files by
+ * their path relative to the maven-repository directory.
+ * <p>
+ * In bounded memory mode, the patched, skipped, added and deleted artifacts
+ * are reported to the listener during the run, they are not part of the
+ * result.
+ *
+ * @author jdenise
+ */
+public final class PatchResult {
+
+    /**
+     * A galleon patch created for a feature-pack of the original repository.
+     */
+    public static final class CreatedPatch {
+
+        private final String id;
+        private final String featurePack;
+        private final Map<String, String> patchedArtifacts;
+
+        CreatedPatch(String id, String featurePack, Map<String, String> patchedArtifacts) {
+            this.id = id;
+            this.featurePack = featurePack;
+            this.patchedArtifacts = Collections.unmodifiableMap(patchedArtifacts);
+        }
+
+        /**
+         * @return The patch feature-pack id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return The file name of the patched feature-pack.
+         */
+        public String getFeaturePack() {
+            return featurePack;
+        }
+
+        /**
+         * @return The old artifacts mapped to the new ones.
+         */
+        public Map<String, String> getPatchedArtifacts() {
+            return patchedArtifacts;
+        }
+    }
+
+    private final List<CreatedPatch> patches;
+    private final Map<String, String> skippedArtifacts;
+    private final List<String> addedArtifacts;
+    private final List<String> deletedFiles;
+    private final List<String> deletedDirectories;
+    private final String patchesXml;
+    private final List<PhaseMetrics> phaseMetrics;
+    private final boolean reported;
+
+    PatchResult(List<CreatedPatch> patches, Map<String, String> skippedArtifacts, List<String> addedArtifacts,
+            List<String> deletedFiles, List<String> deletedDirectories, String patchesXml, List<PhaseMetrics> phaseMetrics,
+            boolean reported) {
+        this.patches = Collections.unmodifiableList(patches);
+        this.skippedArtifacts = Collections.unmodifiableMap(skippedArtifacts);
+        this.addedArtifacts = Collections.unmodifiableList(addedArtifacts);
+        this.deletedFiles = Collections.unmodifiableList(deletedFiles);
+        this.deletedDirectories = Collections.unmodifiableList(deletedDirectories);
+        this.patchesXml = patchesXml;
+        this.phaseMetrics = phaseMetrics;
+        this.reported = reported;
+    }
+
+    public List<CreatedPatch> getPatches() {
+        return patches;
+    }
+
+    /**
+     * @return The new artifacts that have the same content as the artifact
+     * they replace, mapped to the replaced artifact. No patch is created for
+     * them.
+     */
+    public Map<String, String> getSkippedArtifacts() {
+        return skippedArtifacts;
+    }
+
+    /**
+     * @return The artifact files of the maven repo patch.
+     */
+    public List<String> getAddedArtifacts() {
+        return addedArtifacts;
+    }
+
+    public List<String> getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    /**
+     * @return The deleted version directories.
+     */
+    public List<String> getDeletedDirectories() {
+        return deletedDirectories;
+    }
+
+    /**
+     * @return The content of the generated patches.xml file.
+     */
+    public String getPatchesXml() {
+        return patchesXml;
+    }
+
+    /**
+     * @return true if the artifacts have been reported to the listener
+     * during the run instead of being part of the result (bounded memory
+     * mode).
+     */
+    public boolean isReportedDuringRun() {
+        return reported;
+    }
+
+    /**
+     * @return The metrics of the phases, in execution order.
+     */
+    public List<PhaseMetrics> getPhaseMetrics() {
+        return phaseMetrics;
+    }
+
+    /**
+     * @return The report printed by the command line tool.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Created patches:\n");
+        for (CreatedPatch patch : patches) {
+            builder.append(" * patch ").append(patch.id).append(" for ").append(patch.featurePack).append("\n");
+            for (Map.Entry<String, String> entry : patch.patchedArtifacts.entrySet()) {
+                builder.append("   - ").append(entry.getKey()).append(" => ").append(entry.getValue()).append("\n");
+            }
+        }
+        if (reported) {
+            builder.append("\nPatched, skipped, added and deleted artifacts have been reported during the run.\n");
+        } else {
+            builder.append("\nSkipped unchanged artifacts:\n");
+            for (Map.Entry<String, String> entry : skippedArtifacts.entrySet()) {
+                builder.append(" - ").append(entry.getKey()).append(" has the same content as ").append(entry.getValue()).append("\n");
+            }
+            builder.append("\nAdded artifacts:\n");
+            for (String added : addedArtifacts) {
+                builder.append(" - ").append(added.substring(0, added.lastIndexOf('/') + 1)).append("*\n");
+            }
+            builder.append("\nDeleted artifacts:\n");
+            for (String deleted : deletedFiles) {
+                builder.append(" - ").append(deleted).append("\n");
+            }
+            for (String deleted : deletedDirectories) {
+                builder.append(" - ").append(deleted).append("/*\n");
+            }
+        }
+        builder.append("\nContent of patches.xml:\n");
+        builder.append(patchesXml);
+        return builder.toString();
+    }
+}
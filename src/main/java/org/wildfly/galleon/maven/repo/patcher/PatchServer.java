@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.galleon.util.IoUtils;
+
+/**
+ * A local patch service. The original repositories and the feature-pack
+ * scans are kept in memory between requests, so a request against a known
+ * repository only reads the maven repo patch and writes the output.
+ * <p>
+ * A job is a POST to {@link #PATCH_PATH}, the body is the zipped maven repo
+ * patch and the query gives the original zipped repo path on the server
+ * ({@code repo=<path>}) and the options ({@code delta}, {@code reproducible},
+ * {@code compression-level}). Repositories are read in streaming mode. The
+ * generated zip is streamed back as the patcher writes it. A job that fails
+ * before writing gets a 400 (invalid request) or a 500 response with the
+ * error message, a job that fails while writing has its connection closed.
+ *
+ * @author jdenise
+ */
+final class PatchServer implements Closeable {
+
+    static final String PATCH_PATH = "/patch";
+    static final String REPO = "repo";
+    static final String DELTA = "delta";
+    static final String REPRODUCIBLE = "reproducible";
+    static final String COMPRESSION_LEVEL = "compression-level";
+    private static final int FP_CACHE_ENTRIES = 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final PatcherOptions options;
+    // True if the server created its work dir.
+    private final boolean tempWorkDir;
+    private final FeaturePackCache fpCache;
+    private final RepositoryCache repositoryCache;
+    private final AtomicInteger jobCount = new AtomicInteger();
+
+    /**
+     * @param jobs The number of jobs run concurrently.
+     * @param cacheSize The number of original repositories kept open.
+     */
+    PatchServer(InetSocketAddress address, PatcherOptions options, int jobs, int cacheSize) throws IOException {
+        tempWorkDir = options.getWorkDir() == null;
+        if (tempWorkDir) {
+            this.options = new PatcherOptions(options).setWorkDir(Files.createTempDirectory("galleon-patcher"));
+        } else {
+            this.options = options;
+            IoUtils.recursiveDelete(options.getWorkDir());
+            Files.createDirectories(options.getWorkDir());
+        }
+        fpCache = new FeaturePackCache(options.getFeaturePackCache(), options.getListener(), FP_CACHE_ENTRIES);
+        repositoryCache = new RepositoryCache(cacheSize);
+        server = HttpServer.create(address, 0);
+        executor = ParallelUtils.newExecutor(jobs, "daemon");
+        server.setExecutor(executor);
+        server.createContext(PATCH_PATH, this::handle);
+    }
+
+    void start() {
+        server.start();
+        options.getListener().info("Patch service listening on http://" + server.getAddress().getHostString() + ":"
+                + getPort() + PATCH_PATH);
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Path jobDir = options.getWorkDir().resolve("job-" + jobCount.incrementAndGet());
+        boolean aborted = false;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "A job is a POST of the zipped maven repo patch");
+                return;
+            }
+            PatcherOptions jobOptions;
+            Path repo;
+            try {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                if (!query.containsKey(REPO)) {
+                    throw new IllegalArgumentException("The " + REPO + " parameter is missing");
+                }
+                repo = Paths.get(query.get(REPO));
+                if (!Files.exists(repo)) {
+                    throw new IllegalArgumentException("Original repo " + repo + " doesn't exist");
+                }
+                jobOptions = new PatcherOptions(options).setStreaming(true).setWorkDir(jobDir.resolve("work")).
+                        setDelta(query.containsKey(DELTA)).
+                        setReproducible(options.isReproducible() || query.containsKey(REPRODUCIBLE));
+                if (query.containsKey(COMPRESSION_LEVEL)) {
+                    jobOptions.setCompressionLevel(Integer.parseInt(query.get(COMPRESSION_LEVEL)));
+                }
+            } catch (IllegalArgumentException ex) {
+                sendError(exchange, 400, ex.getMessage());
+                return;
+            }
+            Files.createDirectories(jobDir);
+            Path repoPatch = jobDir.resolve("maven-repo-patch.zip");
+            Files.copy(exchange.getRequestBody(), repoPatch);
+            ResponseStream response = new ResponseStream(exchange);
+            try {
+                PatchResult result = new Patcher(repo, repoPatch, ZipSink.of(response), jobOptions, fpCache, repositoryCache).patch();
+                response.close();
+                options.getListener().info("Job " + jobDir.getFileName() + " done, " + result.getPatches().size() + " patches created");
+            } catch (Exception ex) {
+                if (response.committed) {
+                    // Too late for an error status, the connection is closed without completing the response.
+                    aborted = true;
+                    throw new IOException("Job " + jobDir.getFileName() + " failed", ex);
+                }
+                options.getListener().warning("Job " + jobDir.getFileName() + " failed: " + ex);
+                sendError(exchange, 500, String.valueOf(ex.getMessage()));
+            }
+        } finally {
+            if (!aborted) {
+                exchange.close();
+            }
+            IoUtils.recursiveDelete(jobDir);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int i = param.indexOf('=');
+            String name = i < 0 ? param : param.substring(0, i);
+            String value = i < 0 ? "" : param.substring(i + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * The response headers are sent with the first byte of the generated zip,
+     * so a job that fails before writing can still get an error status.
+     */
+    private static final class ResponseStream extends OutputStream {
+
+        private final HttpExchange exchange;
+        private OutputStream out;
+        private boolean committed;
+
+        private ResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        private OutputStream commit() throws IOException {
+            if (!committed) {
+                committed = true;
+                exchange.getResponseHeaders().set("Content-Type", "application/zip");
+                exchange.sendResponseHeaders(200, 0);
+                out = exchange.getResponseBody();
+            }
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            commit().write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            commit().write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (committed) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            commit().close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            repositoryCache.close();
+        } finally {
+            if (tempWorkDir) {
+                IoUtils.recursiveDelete(options.getWorkDir());
+            }
+        }
+    }
+}
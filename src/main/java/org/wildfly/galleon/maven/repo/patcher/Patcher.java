@@ -17,255 +17,865 @@
 package org.wildfly.galleon.maven.repo.patcher;
 
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
 import org.jboss.galleon.universe.FeaturePackLocation.FPID;
 import org.jboss.galleon.util.IoUtils;
-import org.jboss.galleon.util.ZipUtils;
+import org.wildfly.galleon.maven.repo.patcher.PatcherListener.Phase;
 
 /**
  * Patch a repo and generate galleon patches for updated artifacts.
+ * <p>
+ * A patcher is created with a {@link Builder}. Each call to {@link #patch()}
+ * is a complete run: the inputs are read, the output is written and a
+ * {@link PatchResult} is returned. Messages and progress are sent to the
+ * {@link PatcherListener}, nothing is printed.
  *
  * @author jdenise
  */
 public final class Patcher {
 
-    private static final Set<String> FP = new HashSet<>();
-
-    static final String WORK_DIR = "tool-work-dir";
     static final String FP_PATHS = "fp-paths";
     static final String PATCH_MARKER = "-patch";
 
-    static {
-        FP.add("org/wildfly/core/wildfly-core-galleon-pack");
-        FP.add("org/jboss/eap/wildfly-servlet-galleon-pack");
-        FP.add("org/jboss/eap/wildfly-ee-galleon-pack");
-        FP.add("org/jboss/eap/wildfly-galleon-pack");
-    }
+    /**
+     * Configure a patcher. The original repository, the maven repo patch and
+     * the output are required. Channels and streams are not closed by the
+     * patcher.
+     */
+    public static final class Builder {
+
+        private final PatcherOptions options = new PatcherOptions();
+        private ZipSource originalMavenRepo;
+        private ZipSource repoPatch;
+        private ZipSink output;
+
+        private Builder() {
+        }
+
+        public Builder setOriginalRepository(Path zip) {
+            originalMavenRepo = ZipSource.of(zip);
+            return this;
+        }
+
+        public Builder setOriginalRepository(SeekableByteChannel zip) {
+            originalMavenRepo = ZipSource.of(zip);
+            return this;
+        }
+
+        public Builder setRepositoryPatch(Path zip) {
+            repoPatch = ZipSource.of(zip);
+            return this;
+        }
+
+        public Builder setRepositoryPatch(SeekableByteChannel zip) {
+            repoPatch = ZipSource.of(zip);
+            return this;
+        }
+
+        public Builder setOutput(Path zip) {
+            output = ZipSink.of(zip);
+            return this;
+        }
+
+        public Builder setOutput(SeekableByteChannel zip) {
+            output = ZipSink.of(zip);
+            return this;
+        }
+
+        /**
+         * The zip is written sequentially, a file or a channel should be
+         * preferred.
+         */
+        public Builder setOutput(OutputStream zip) {
+            output = ZipSink.of(zip);
+            return this;
+        }
+
+        public Builder setListener(PatcherListener listener) {
+            options.setListener(listener);
+            return this;
+        }
+
+        /**
+         * Receive the metrics of each run, see
+         * {@link MetricsReporter#json(Path)}.
+         */
+        public Builder setMetricsReporter(MetricsReporter reporter) {
+            options.setMetricsReporter(reporter);
+            return this;
+        }
 
-    private final Path outputFile;
-    private final Path repoWorkDir;
-    private final Path repoPatchWorkDir;
-    private final Path repoParentDir;
-    private final Path workDir;
+        /**
+         * Do not extract the original repository, see {@link Main#STREAMING}.
+         */
+        public Builder setStreaming(boolean streaming) {
+            options.setStreaming(streaming);
+            return this;
+        }
 
-    private final Path mavenRepoRoot;
-    private final Path patchedMavenRepoRoot;
+        /**
+         * Keep the heap flat whatever the size of the original repository,
+         * see {@link Main#BOUNDED_MEMORY}. Implies streaming.
+         */
+        public Builder setBoundedMemory(boolean boundedMemory) {
+            options.setBoundedMemory(boundedMemory);
+            return this;
+        }
 
-    private final Log log = new Log();
+        /**
+         * Only write the changes, see {@link Main#DELTA}.
+         */
+        public Builder setDelta(boolean delta) {
+            options.setDelta(delta);
+            return this;
+        }
 
-    private final Map<String, String> newArtifactsMap;
+        /**
+         * Generate byte-identical archives for identical inputs.
+         */
+        public Builder setReproducible(boolean reproducible) {
+            options.setReproducible(reproducible);
+            return this;
+        }
 
-    Patcher(Path originalMavenRepo, Path repoPatch, Path outputFile) throws Exception {
-        this.outputFile = outputFile;
-        Files.deleteIfExists(outputFile);
-        workDir = Paths.get(WORK_DIR);
-        System.out.println("Tool work dir (you can delete once tool has been run): " + workDir);
-        IoUtils.recursiveDelete(workDir);
-        Files.createDirectory(workDir);
+        public Builder setThreads(int threads) {
+            options.setParallelism(threads);
+            return this;
+        }
 
-        repoWorkDir = workDir.resolve("maven-repo");
-        repoPatchWorkDir = workDir.resolve("repo-patch");
+        /**
+         * @param level {@link java.util.zip.Deflater#DEFAULT_COMPRESSION} or
+         * 0 to 9.
+         */
+        public Builder setCompressionLevel(int level) {
+            options.setCompressionLevel(level);
+            return this;
+        }
 
-        System.out.println("Unzipping maven repo to " + repoWorkDir);
-        ZipUtils.unzip(originalMavenRepo, repoWorkDir);
+        /**
+         * Cache the feature-pack metadata in a directory, shared between
+         * runs.
+         */
+        public Builder setFeaturePackCache(Path dir) {
+            options.setFeaturePackCache(dir);
+            return this;
+        }
 
-        repoParentDir = Files.list(repoWorkDir).findFirst().get();
+        /**
+         * Persist the original repository index next to the zip. Ignored if
+         * the repository is read from a channel.
+         */
+        public Builder setPersistIndex(boolean persistIndex) {
+            options.setPersistIndex(persistIndex);
+            return this;
+        }
 
-        System.out.println("Unzipping maven repo patch to " + repoPatchWorkDir);
-        ZipUtils.unzip(repoPatch, repoPatchWorkDir);
+        /**
+         * The directory where the temporary files are written, deleted at
+         * the beginning of each run. It must not be shared by patchers that
+         * run concurrently. By default each run writes in its own temporary
+         * directory, deleted at the end of the run.
+         */
+        public Builder setWorkDir(Path workDir) {
+            options.setWorkDir(workDir);
+            return this;
+        }
 
-        mavenRepoRoot = getMavenRepoRoot(repoWorkDir);
-        patchedMavenRepoRoot = getMavenRepoRoot(repoPatchWorkDir);
+        public Patcher build() throws IOException {
+            if (originalMavenRepo == null) {
+                throw new IllegalStateException("The original repository is not set");
+            }
+            if (repoPatch == null) {
+                throw new IllegalStateException("The maven repo patch is not set");
+            }
+            if (output == null) {
+                throw new IllegalStateException("The output is not set");
+            }
+            return new Patcher(originalMavenRepo, repoPatch, output, new PatcherOptions(options));
+        }
+    }
+
+    private final ZipSource originalMavenRepo;
+    // Null if the maven repo patch is shared.
+    private final ZipSource repoPatch;
+    private final PatchRepository sharedPatchRepository;
+    private final ZipSink output;
+    // True if each run creates its own work dir.
+    private final boolean tempWorkDir;
+
+    private final FeaturePackCache fpCache;
+    // Null if the original repository is opened for each run.
+    private final RepositoryCache repositoryCache;
+    private final PatcherOptions options;
+    private final PatcherListener listener;
+
+    // State of the current run.
+    private MavenRepository repository;
+    private PatchRepository patchRepository;
+    private Path workDir;
+    private Log log;
+    private PhaseRecorder recorder;
+    private Map<String, ArtifactCoordinate> newArtifactsMap;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    Patcher(Path originalMavenRepo, Path repoPatch, Path outputFile) throws IOException {
+        this(originalMavenRepo, repoPatch, outputFile, new PatcherOptions());
+    }
 
-        Set<Path> upgradedFiles = new HashSet<>();
-        retrievePatchedFiles(patchedMavenRepoRoot, upgradedFiles);
+    Patcher(Path originalMavenRepo, Path repoPatch, Path outputFile, PatcherOptions options) throws IOException {
+        this(ZipSource.of(originalMavenRepo), ZipSource.of(repoPatch), ZipSink.of(outputFile), options);
+    }
+
+    private Patcher(ZipSource originalMavenRepo, ZipSource repoPatch, ZipSink output, PatcherOptions options) throws IOException {
+        this(originalMavenRepo, repoPatch, null, output, options,
+                options.getFeaturePackCache() == null ? null : new FeaturePackCache(options.getFeaturePackCache(), options.getListener(),
+                        options.isBoundedMemory() ? options.getParallelism() : 0),
+                null);
+    }
+
+    /**
+     * The feature-pack cache and the maven repo patch can be shared by
+     * patchers. A shared maven repo patch is not closed.
+     */
+    Patcher(Path originalMavenRepo, Path outputFile, PatcherOptions options, FeaturePackCache fpCache,
+            PatchRepository patchRepository) {
+        this(ZipSource.of(originalMavenRepo), null, patchRepository, ZipSink.of(outputFile), options, fpCache, null);
+    }
+
+    /**
+     * The original repository is taken from a cache of open repositories, it
+     * is read in streaming mode. The cache is not used in bounded memory mode.
+     */
+    Patcher(Path originalMavenRepo, Path repoPatch, ZipSink output, PatcherOptions options, FeaturePackCache fpCache,
+            RepositoryCache repositoryCache) {
+        this(ZipSource.of(originalMavenRepo), ZipSource.of(repoPatch), null, output, options, fpCache, repositoryCache);
+    }
+
+    private Patcher(ZipSource originalMavenRepo, ZipSource repoPatch, PatchRepository sharedPatchRepository, ZipSink output,
+            PatcherOptions options, FeaturePackCache fpCache, RepositoryCache repositoryCache) {
+        this.originalMavenRepo = originalMavenRepo;
+        this.repoPatch = repoPatch;
+        this.sharedPatchRepository = sharedPatchRepository;
+        this.output = output;
+        tempWorkDir = options.getWorkDir() == null;
+        // The work dir of the run is set in a copy of the options.
+        this.options = tempWorkDir ? new PatcherOptions(options) : options;
+        this.fpCache = fpCache;
+        this.repositoryCache = repositoryCache;
+        listener = options.getListener();
+    }
+
+    /**
+     * Generate the patched repository.
+     *
+     * @return What has been patched.
+     * @throws Exception If the repository can't be patched, the output is then
+     * incomplete.
+     */
+    public synchronized PatchResult patch() throws Exception {
+        log = options.isBoundedMemory() ? new Log(listener) : new Log();
+        recorder = new PhaseRecorder(options.getIoStats());
+        ExecutorService executor = ParallelUtils.newExecutor(options.getParallelism(), "patcher");
+        PatchResult result;
+        try {
+            open();
+            result = doPatch(executor);
+        } catch (Exception ex) {
+            try {
+                reportMetrics(false);
+            } catch (IOException reportEx) {
+                ex.addSuppressed(reportEx);
+            }
+            throw ex;
+        } finally {
+            executor.shutdownNow();
+            close();
+        }
+        reportMetrics(true);
+        return result;
+    }
+
+    private void open() throws Exception {
+        phaseStarted(Phase.READ_REPOSITORIES);
+        if (tempWorkDir) {
+            workDir = Files.createTempDirectory("galleon-patcher");
+            options.setWorkDir(workDir);
+            listener.info("Tool work dir: " + workDir);
+        } else {
+            workDir = options.getWorkDir();
+            listener.info("Tool work dir (you can delete once tool has been run): " + workDir);
+            IoUtils.recursiveDelete(workDir);
+            Files.createDirectories(workDir);
+        }
+        patchRepository = sharedPatchRepository == null ? PatchRepository.newInstance(repoPatch, options) : sharedPatchRepository;
+
+        if (repositoryCache != null && !options.isBoundedMemory()) {
+            repository = repositoryCache.open(originalMavenRepo.getFile(), options);
+        } else if (options.isStreaming()) {
+            repository = ZippedMavenRepository.newInstance(originalMavenRepo, options);
+        } else {
+            repository = ExtractedMavenRepository.newInstance(originalMavenRepo, workDir.resolve("maven-repo"), options);
+        }
+
+        PathTrie upgradedFiles = patchRepository.getArtifacts();
 
         if (upgradedFiles.isEmpty()) {
             throw new Exception("No artifacts found in the maven repo patch. Check your maven repo patch.");
         }
 
-        log.addedArtifacts(upgradedFiles);
-
         // Convert the new artifacts to key/value pairs as they exist in artifact.properties file.
         newArtifactsMap = ArtifactUtils.convertToArtifactVersion(upgradedFiles);
+        phaseCompleted(Phase.READ_REPOSITORIES);
     }
 
-    void patch() throws Exception {
+    private void close() throws IOException {
+        try {
+            if (repository != null) {
+                repository.close();
+            }
+        } finally {
+            try {
+                if (patchRepository != null && sharedPatchRepository == null) {
+                    patchRepository.close();
+                }
+            } finally {
+                // Only the work dir created by the run is deleted.
+                if (tempWorkDir && workDir != null) {
+                    IoUtils.recursiveDelete(workDir);
+                    options.setWorkDir(null);
+                }
+                repository = null;
+                patchRepository = null;
+                workDir = null;
+            }
+        }
+    }
+
+    private void phaseStarted(Phase phase) {
+        listener.phaseStarted(phase);
+        recorder.start(phase);
+    }
+
+    private void phaseCompleted(Phase phase) {
+        listener.phaseCompleted(phase, recorder.complete().getWallTimeNanos() / 1000000);
+    }
+
+    private void reportMetrics(boolean succeeded) throws IOException {
+        List<PhaseMetrics> phases = recorder.finish();
+        if (options.getMetricsReporter() != null) {
+            options.getMetricsReporter().report(phases, succeeded);
+        }
+    }
+
+    private InputStream openPatchFile(String name) throws IOException {
+        return options.getIoStats().count(patchRepository.newInputStream(name));
+    }
+
+    private PatchResult doPatch(ExecutorService executor) throws Exception {
         List<Path> createdPatches = new ArrayList<>();
         List<FPID> createdPatchesGAV = new ArrayList<>();
 
-        Set<String> fps = FP;
-        // Used by tests
+        phaseStarted(Phase.VERIFY_CHECKSUMS);
+        verifyChecksums(executor);
+        phaseCompleted(Phase.VERIFY_CHECKSUMS);
+
+        phaseStarted(Phase.SCAN_FEATURE_PACKS);
+
+        // Used by tests, restrict the feature-packs to a set of GA.
+        Set<Path> fps = null;
         String fpPaths = System.getProperty(FP_PATHS, null);
         if (fpPaths != null) {
             String[] paths = fpPaths.split(",");
             fps = new HashSet<>();
             for (String p : paths) {
-                fps.add(p.trim());
+                fps.add(Paths.get(p.trim()));
             }
         }
-        // Iterate over all the known galleon feature-packs
-        for (String p : fps) {
-            Path fppath = mavenRepoRoot.resolve(p);
-            if (!Files.exists(fppath)) {
+        // Discover the galleon feature-packs: all the zip artifacts, sorted to make the merge deterministic.
+        List<FeaturePackTask> candidates = new ArrayList<>();
+        for (Path zip : repository.listFiles(".zip")) {
+            if (!isMavenArtifact(zip)) {
                 continue;
             }
+            Path version = zip.getParent();
+            Path fppath = version.getParent();
+            if (fps == null || fps.contains(fppath)) {
+                candidates.add(new FeaturePackTask(fppath, version, zip));
+            }
+        }
+
+        // Read the zips metadata concurrently, the zips are not extracted. In bounded memory mode, the
+        // feature-packs are read by batches and their artifact versions are dropped once indexed.
+        ArtifactIndex index = new ArtifactIndex(newArtifactsMap.keySet());
+        List<FeaturePackTask> tasks = new ArrayList<>();
+        int batchSize = options.isBoundedMemory() ? options.getParallelism() : Math.max(1, candidates.size());
+        for (int from = 0; from < candidates.size(); from += batchSize) {
+            List<FeaturePackTask> batch = candidates.subList(from, Math.min(candidates.size(), from + batchSize));
+            List<Callable<FeaturePackMetadata>> readers = new ArrayList<>();
+            for (FeaturePackTask task : batch) {
+                readers.add(() -> {
+                    return readMetadata(task.fpFile);
+                });
+            }
+            List<FeaturePackMetadata> batchMetadata = ParallelUtils.invokeAll(executor, readers);
+            for (int i = 0; i < batch.size(); i++) {
+                FeaturePackMetadata metadata = batchMetadata.get(i);
+                // Not a galleon feature-pack or a patch already applied to the repository.
+                if (metadata != null && !metadata.isPatch()) {
+                    FeaturePackTask task = batch.get(i);
+                    // Merge, in feature-pack order: an artifact is patched in all the feature-packs that reference it.
+                    index.add(tasks.size(), metadata.getVersionProps());
+                    task.metadata = options.isBoundedMemory() ? metadata.withoutVersionProps() : metadata;
+                    tasks.add(task);
+                }
+            }
+        }
+        Set<String> skipped = skipUnchangedArtifacts(executor, index);
+        phaseCompleted(Phase.SCAN_FEATURE_PACKS);
+
+        phaseStarted(Phase.CREATE_PATCHES);
+        List<Map<String, ArtifactCoordinate>> claimed = index.claim(newArtifactsMap, tasks.size());
+        List<FeaturePackTask> toPatch = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            FeaturePackTask task = tasks.get(i);
+            task.scannedFp = ScannedFeaturePack.scan(index.getArtifacts(i, claimed.get(i).keySet()), claimed.get(i));
+            // We found some artifacts in this feature-pack, must create a patch
+            if (!task.scannedFp.getToRemove().isEmpty()) {
+                toPatch.add(task);
+            }
+        }
+
+        // Build the patches concurrently.
+        List<Callable<Path>> builders = new ArrayList<>();
+        for (FeaturePackTask task : toPatch) {
+            // Compute a patch GAV, will be put in the same GA as the galleon pack it is a patch for.
+            task.patchVersion = ArtifactUtils.createPatchVersion(task.version.getFileName().toString());
+            task.patchGav = ArtifactUtils.patchPathToGav(task.fppath.resolve(task.patchVersion));
+            builders.add(() -> {
+                Map<String, ArtifactCoordinate> versionProps = options.isBoundedMemory() ? readVersionProps(task.fpFile)
+                        : task.metadata.getVersionProps();
+                return GalleonPatchUtils.createPatch(workDir, task.fpFile.getFileName().toString(), task.metadata.getProducer(),
+                        task.scannedFp.getVersionProps(versionProps), task.patchGav, task.fppath.getFileName().toString(), task.patchVersion,
+                        options);
+            });
+        }
+        List<Path> patches = ParallelUtils.invokeAll(executor, builders);
+
+        // The old artifacts of all the patches, an artifact can be referenced by many versions of a feature-pack.
+        PathTrie toRemove = new PathTrie();
+        Set<String> patched = new HashSet<>();
+        for (int i = 0; i < toPatch.size(); i++) {
+            FeaturePackTask task = toPatch.get(i);
+            Path patch = patches.get(i);
+            createdPatchesGAV.add(task.patchGav);
+            createdPatches.add(patch);
+
+            //Install the patch in the maven repo.
+            //Installed in the same artifactId as the patched galleon feature-pack
+            Path patchFile = task.fppath.resolve(task.patchVersion).resolve(patch.getFileName());
+            log.addPatch(task.patchGav, task.fpFile);
+            repository.install(patchFile, patch);
+            for (String checksum : new String[]{Checksums.SHA1, Checksums.MD5}) {
+                repository.install(patchFile.resolveSibling(patchFile.getFileName() + checksum),
+                        patch.resolveSibling(patch.getFileName() + checksum));
+            }
 
-            Path version = Files.list(fppath).findFirst().get();
-            if (version == null) {
-                throw new Exception("Error, no version directory in " + fppath);
+            for (String key : task.scannedFp.getOldArtifacts().keySet()) {
+                log.addPatchedArtifact(task.scannedFp.getOldArtifacts().get(key), task.scannedFp.getNewArtifacts().get(key));
+                patched.add(key);
             }
+            for (Path oldPath : task.scannedFp.getToRemove()) {
+                toRemove.add(oldPath);
+            }
+        }
+        // Remove all the artifacts that we have handled in the patches.
+        // We check at the end that the newArtifactsMap is empty, all new artifacts
+        // have been found.
+        newArtifactsMap.keySet().removeAll(patched);
+
+        // Remove the old artifacts.
+        deleteArtifacts(repository, toRemove, log);
+        if (createdPatches.isEmpty() && skipped.isEmpty()) {
+            throw new RuntimeException("No patches created, something wrong somewhere");
+        }
 
-            Path fpFile = Files.list(version).filter((file) -> {
-                return file.toString().endsWith(".zip");
-            }).findFirst().get();
+        if (!newArtifactsMap.isEmpty()) {
+            throw new Exception("Following artifacts present in maven repo patch have not been found in galleon featurepacks: " + newArtifactsMap);
+        }
+        phaseCompleted(Phase.CREATE_PATCHES);
 
-            if (fpFile == null) {
-                throw new Exception("Error, no galleon pack artifact in " + version);
+        phaseStarted(Phase.WRITE_OUTPUT);
+
+        // generate patch.txt file
+        Path patchesFile = workDir.resolve(GalleonPatchUtils.PATCHES_FILE);
+        String content = GalleonPatchUtils.createPatchesFile(patchesFile, createdPatchesGAV);
+        repository.installInParent(GalleonPatchUtils.PATCHES_FILE, patchesFile);
+        // Copy new artifacts in repo, the skipped ones are not added.
+        Predicate<String> installed = getInstalledFiles(skipped);
+        List<Path> added = new ArrayList<>();
+        for (Path artifact : patchRepository.getArtifacts()) {
+            if (installed.test(AbstractMavenRepository.toEntryName(artifact))) {
+                added.add(artifact);
             }
+        }
+        log.addedArtifacts(added);
+        repository.installAll(patchRepository, installed);
+        //Zip the repo, or only the changes
+        if (options.isDelta()) {
+            repository.saveDelta(output);
+        } else {
+            repository.save(output);
+        }
+        phaseCompleted(Phase.WRITE_OUTPUT);
 
-            System.out.println("Scanning feature-pack " + fpFile.getFileName());
+        // Finally advertise what we have done
+        return log.toResult(content, recorder.getPhases());
+    }
 
-            // Unzip the feature-pack
-            Path fpDir = workDir.resolve(fpFile.getFileName());
-            ZipUtils.unzip(fpFile, fpDir);
+    /**
+     * Check the files of the maven repo patch against their .sha1 and .md5
+     * files, concurrently. Both checksums are computed in a single read.
+     */
+    private void verifyChecksums(ExecutorService executor) throws Exception {
+        Set<String> files = new HashSet<>(patchRepository.getFiles());
+        List<Callable<String>> verifiers = new ArrayList<>();
+        for (String name : patchRepository.getFiles()) {
+            boolean hasSha1 = files.contains(name + Checksums.SHA1);
+            boolean hasMd5 = files.contains(name + Checksums.MD5);
+            if (!hasSha1 && !hasMd5) {
+                continue;
+            }
+            verifiers.add(() -> {
+                String expectedSha1 = null;
+                String expectedMd5 = null;
+                if (hasSha1) {
+                    try (InputStream in = openPatchFile(name + Checksums.SHA1)) {
+                        expectedSha1 = Checksums.readSha1(in);
+                    }
+                }
+                if (hasMd5) {
+                    try (InputStream in = openPatchFile(name + Checksums.MD5)) {
+                        expectedMd5 = Checksums.readMd5(in);
+                    }
+                }
+                if (expectedSha1 == null && expectedMd5 == null) {
+                    listener.warning("Invalid checksum files for " + name + " in maven repo patch, not verified");
+                    return null;
+                }
+                Checksums checksums;
+                try (InputStream in = openPatchFile(name)) {
+                    checksums = Checksums.compute(in);
+                }
+                if (expectedSha1 != null && !expectedSha1.equals(checksums.getSha1())) {
+                    return name + " SHA-1 is " + checksums.getSha1() + ", expected " + expectedSha1;
+                }
+                if (expectedMd5 != null && !expectedMd5.equals(checksums.getMd5())) {
+                    return name + " MD5 is " + checksums.getMd5() + ", expected " + expectedMd5;
+                }
+                return null;
+            });
+        }
+        List<String> errors = new ArrayList<>();
+        for (String error : ParallelUtils.invokeAll(executor, verifiers)) {
+            if (error != null) {
+                errors.add(error);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new Exception("Invalid checksums in maven repo patch: " + errors);
+        }
+        listener.info("Verified checksums of " + verifiers.size() + " files of the maven repo patch");
+    }
 
-            ScannedFeaturePack scannedFp = ScannedFeaturePack.scan(fpDir, newArtifactsMap);
+    /**
+     * Remove from the new artifacts the ones that have the same content as the
+     * artifact they replace: same bytes under a new version, or same
+     * artifact. They would produce useless patches. Hashes are compared
+     * concurrently.
+     *
+     * @return The entry names of the skipped artifacts in the maven repo
+     * patch.
+     */
+    private Set<String> skipUnchangedArtifacts(ExecutorService executor, ArtifactIndex index) throws Exception {
+        List<String> keys = new ArrayList<>();
+        List<Path> newPaths = new ArrayList<>();
+        List<Callable<Boolean>> comparators = new ArrayList<>();
+        for (Map.Entry<String, ArtifactCoordinate> entry : newArtifactsMap.entrySet()) {
+            List<ArtifactIndex.Reference> refs = index.get(entry.getKey());
+            if (refs.isEmpty()) {
+                continue;
+            }
+            // The artifact is patched in all the feature-packs that reference it, skipped if
+            // it has the same content as all the artifacts it replaces.
+            Set<Path> oldPaths = new LinkedHashSet<>();
+            for (ArtifactIndex.Reference ref : refs) {
+                oldPaths.add(ref.getArtifact().toPath());
+            }
+            Path newPath = entry.getValue().toPath();
+            boolean exist = true;
+            for (Path oldPath : oldPaths) {
+                exist &= repository.exists(oldPath);
+            }
+            if (!exist) {
+                continue;
+            }
+            keys.add(entry.getKey());
+            newPaths.add(newPath);
+            comparators.add(() -> {
+                String sha1 = getPatchSha1(AbstractMavenRepository.toEntryName(newPath));
+                for (Path oldPath : oldPaths) {
+                    if (!getSha1(oldPath).equals(sha1)) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+        List<Boolean> unchanged = ParallelUtils.invokeAll(executor, comparators);
+        Set<String> skipped = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (unchanged.get(i)) {
+                String key = keys.get(i);
+                log.addSkippedArtifact(index.get(key).get(0).getArtifact(), newArtifactsMap.remove(key));
+                skipped.add(AbstractMavenRepository.toEntryName(newPaths.get(i)));
+            }
+        }
+        return skipped;
+    }
 
-            // We found some artifacts in this feature-pack, must create a patch
-            if (!scannedFp.getToRemove().isEmpty()) {
-                // Compute a patch GAV, will be put in the same GA as the galleon pack it is a patch for.
-                String patchVersion = ArtifactUtils.createPatchVersion(version.getFileName().toString());
-                FPID patchGav = ArtifactUtils.patchPathToGav(Paths.get(p).resolve(patchVersion));
-                createdPatchesGAV.add(patchGav);
-
-                // Create the patch
-                Path patch = GalleonPatchUtils.createPatch(workDir, fpDir,
-                        scannedFp.getVersionProps(), patchGav, Paths.get(p).getFileName().toString(), patchVersion);
-                createdPatches.add(patch);
-
-                //Install the patch in the maven repo.
-                //Installed in the same artifactId as the patched galleon feature-pack
-                Path patchDir = fppath.resolve(patchVersion);
-                Files.createDirectories(patchDir);
-                Path patchFile = patchDir.resolve(patch.getFileName());
-                log.addPatch(patchGav, fpFile);
-                Files.copy(patch, patchFile);
-
-                // Remove all the artifacts that we have handled in this patch.
-                // We check at the end that the newArtifactsMap is empty, all new artifacts
-                // have been found.
-                for (String key : scannedFp.getOldArtifacts().keySet()) {
-                    log.addPatchedArtifact(scannedFp.getOldArtifacts().get(key), newArtifactsMap.get(key));
-                    newArtifactsMap.remove(key);
+    /**
+     * The files of a skipped artifact (checksums, signatures, ...) are not
+     * installed, nor the other files (pom, ...) of a version directory whose
+     * artifacts are all skipped.
+     *
+     * @return Accepts the entry names of the maven repo patch files to
+     * install.
+     */
+    private Predicate<String> getInstalledFiles(Set<String> skipped) {
+        if (skipped.isEmpty()) {
+            return (name) -> true;
+        }
+        Set<String> skippedDirs = new HashSet<>();
+        for (String name : skipped) {
+            skippedDirs.add(getParent(name));
+        }
+        for (Path artifact : patchRepository.getArtifacts()) {
+            String name = AbstractMavenRepository.toEntryName(artifact);
+            if (!skipped.contains(name)) {
+                skippedDirs.remove(getParent(name));
+            }
+        }
+        return (name) -> {
+            if (skippedDirs.contains(getParent(name))) {
+                return false;
+            }
+            // art-1.0.jar.sha1 is a file of art-1.0.jar
+            String file = name;
+            int dir = name.lastIndexOf('/');
+            int extension = name.lastIndexOf('.');
+            while (!skipped.contains(file)) {
+                if (extension <= dir) {
+                    return true;
                 }
+                file = file.substring(0, extension);
+                extension = file.lastIndexOf('.');
+            }
+            return false;
+        };
+    }
 
-                // Remove the old artifacts.
-                deleteArtifacts(scannedFp.getToRemove());
+    private static String getParent(String name) {
+        return name.substring(0, name.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return The SHA-1 of a repository file, read from its .sha1 file if
+     * valid, computed otherwise.
+     */
+    private String getSha1(Path file) throws IOException {
+        Path sha1File = file.resolveSibling(file.getFileName() + Checksums.SHA1);
+        if (repository.exists(sha1File)) {
+            try (InputStream in = repository.newInputStream(sha1File)) {
+                String sha1 = Checksums.readSha1(in);
+                if (sha1 != null) {
+                    return sha1;
+                }
             }
         }
-        if (createdPatches.isEmpty()) {
-            throw new RuntimeException("No patches created, something wrong somewhere");
+        try (InputStream in = repository.newInputStream(file)) {
+            return Checksums.compute(in).getSha1();
         }
+    }
 
-        if (!newArtifactsMap.isEmpty()) {
-            throw new Exception("Following artifacts present in maven repo patch have not been found in galleon featurepacks: " + newArtifactsMap);
+    /**
+     * @return The SHA-1 of a maven repo patch file, read from its .sha1 file
+     * (already verified) if valid, computed otherwise.
+     */
+    private String getPatchSha1(String name) throws IOException {
+        if (patchRepository.getEntry(name + Checksums.SHA1) != null) {
+            try (InputStream in = openPatchFile(name + Checksums.SHA1)) {
+                String sha1 = Checksums.readSha1(in);
+                if (sha1 != null) {
+                    return sha1;
+                }
+            }
         }
+        try (InputStream in = openPatchFile(name)) {
+            return Checksums.compute(in).getSha1();
+        }
+    }
 
-        // generate patch.txt file
-        String content = GalleonPatchUtils.createPatchesFile(repoParentDir, createdPatchesGAV);
-        // Copy new artifacts in repo
-        IoUtils.copy(patchedMavenRepoRoot, mavenRepoRoot);
-        //Zip the repo
-        System.out.println("Zipping " + repoParentDir + " to " + outputFile);
-        ZipUtils.zip(repoWorkDir, outputFile);
+    /**
+     * A maven artifact file name is artifactId-version[-classifier].extension.
+     */
+    private static boolean isMavenArtifact(Path file) {
+        if (file.getNameCount() < 4) {
+            return false;
+        }
+        String version = file.getParent().getFileName().toString();
+        String artifactId = file.getParent().getParent().getFileName().toString();
+        return file.getFileName().toString().startsWith(artifactId + "-" + version);
+    }
 
-        // Finally advertise what we have done
-        log.print(content);
+    /**
+     * @return The metadata or null if the file is not a galleon feature-pack.
+     */
+    private FeaturePackMetadata readMetadata(Path fpFile) throws Exception {
+        String sha1 = null;
+        if (fpCache != null) {
+            sha1 = getSha1(fpFile);
+            FeaturePackMetadata metadata = fpCache.get(sha1);
+            if (metadata == FeaturePackCache.NOT_A_FEATURE_PACK) {
+                return null;
+            }
+            if (metadata != null) {
+                listener.info("Feature-pack " + fpFile.getFileName() + " found in cache");
+                return metadata;
+            }
+        }
+        FeaturePackMetadata metadata = readFeaturePack(fpFile);
+        if (metadata == null) {
+            if (fpCache != null) {
+                fpCache.put(sha1, FeaturePackCache.NOT_A_FEATURE_PACK);
+            }
+            return null;
+        }
+        listener.info("Scanned feature-pack " + fpFile.getFileName());
+        if (fpCache != null) {
+            fpCache.put(sha1, metadata);
+        }
+        return metadata;
     }
 
-    private void deleteArtifacts(Set<Path> toRemove) throws Exception {
-        // Remove the old artifacts.
-        Map<Path, Set<Path>> versionDirs = new HashMap<>();
+    /**
+     * In bounded memory mode, the artifact versions of a feature-pack are read
+     * again to build its patch.
+     */
+    private Map<String, ArtifactCoordinate> readVersionProps(Path fpFile) throws Exception {
+        if (fpCache != null) {
+            FeaturePackMetadata metadata = fpCache.get(getSha1(fpFile));
+            if (metadata != null) {
+                return metadata.getVersionProps();
+            }
+        }
+        return readFeaturePack(fpFile).getVersionProps();
+    }
+
+    /**
+     * Read the feature-pack through its central directory when it can be
+     * read with random access, as a stream otherwise.
+     */
+    private FeaturePackMetadata readFeaturePack(Path fpFile) throws Exception {
+        String name = fpFile.getFileName().toString();
+        SeekableByteChannel fpChannel = repository.newChannel(fpFile);
+        if (fpChannel != null) {
+            return FeaturePackMetadata.read(fpChannel, name);
+        }
+        try (InputStream fpStream = repository.newInputStream(fpFile)) {
+            return FeaturePackMetadata.read(fpStream, name);
+        }
+    }
+
+    /**
+     * Delete the artifacts and their siblings (pom, checksums, ...), the
+     * version directory is deleted when no artifact is left in it.
+     */
+    static void deleteArtifacts(MavenRepository repository, PathTrie toRemove, Log log) throws Exception {
+        // The content of the version directories, each one is listed once.
+        PathTrie content = new PathTrie();
+        PathTrie toDelete = new PathTrie();
         for (Path oldPath : toRemove) {
-            Path pr = mavenRepoRoot.resolve(oldPath);
-            if (!Files.exists(pr)) {
-                throw new RuntimeException(pr + " doesn't exist! Can't remove it");
-            }
-            Path parentDir = pr.getParent();
-            Set<Path> paths = versionDirs.get(parentDir);
-            if (paths == null) {
-                paths = new HashSet<>();
-                versionDirs.put(parentDir, paths);
-            }
-            paths.add(pr);
-            final Set<Path> finalPaths = paths;
+            if (!repository.exists(oldPath)) {
+                throw new RuntimeException(oldPath + " doesn't exist! Can't remove it");
+            }
+            Path versionDir = oldPath.getParent();
+            if (!content.containsDir(versionDir)) {
+                for (Path path : repository.list(versionDir)) {
+                    content.add(path);
+                }
+            }
+            toDelete.add(oldPath);
             // We want to delete all files that starts by the same name
             // pom file being delete only if no more artifact in version dir after removal.
-            String name = pr.getFileName().toString();
-            Files.list(parentDir).filter((path) -> {
-                String fileName = path.getFileName().toString();
-                return fileName.startsWith(name);
-            }).forEach((path) -> {
-                finalPaths.add(path);
-            });
+            for (Path path : content.startingWith(oldPath)) {
+                toDelete.add(path);
+            }
         }
         //Check the parent directory, if no more artifact delete it
         // otherwise delete the subset of paths.
-        for (Entry<Path, Set<Path>> entry : versionDirs.entrySet()) {
-            Path versionDir = entry.getKey();
-            Set<Path> ignore = entry.getValue();
-            long num = Files.list(versionDir).filter((path) -> {
-                return ArtifactUtils.isArtifact(path) && !ignore.contains(path);
-            }).count();
-            if (num == 0) {
-                IoUtils.recursiveDelete(versionDir);
-                log.addDeletedDir(mavenRepoRoot.relativize(versionDir));
+        for (Path versionDir : toDelete.parents()) {
+            if (isArtifactFree(content, toDelete, versionDir)) {
+                repository.deleteDir(versionDir);
+                log.addDeletedDir(versionDir);
             } else {
-                for (Path path : entry.getValue()) {
-                    Files.delete(path);
-                    log.addDeletedArtifact(mavenRepoRoot.relativize(path));
+                for (Path path : toDelete.children(versionDir)) {
+                    repository.delete(path);
+                    log.addDeletedArtifact(path);
                 }
             }
         }
     }
 
-    private static Path getMavenRepoRoot(Path p) throws Exception {
-        List<Path> path = new ArrayList<>();
-        Files.walkFileTree(p, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                if (dir.getFileName().toString().equals("maven-repository")) {
-                    path.add(dir);
-                    return FileVisitResult.SKIP_SUBTREE;
-                }
-                return FileVisitResult.CONTINUE;
+    private static boolean isArtifactFree(PathTrie content, PathTrie toDelete, Path versionDir) {
+        for (Path path : content.children(versionDir)) {
+            if (ArtifactUtils.isArtifact(path) && !toDelete.contains(path)) {
+                return false;
             }
-        });
-        return path.get(0);
+        }
+        return true;
     }
 
-    private static void retrievePatchedFiles(Path p, Set<Path> set) throws Exception {
-        Files.walkFileTree(p, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path t, BasicFileAttributes bfa) throws IOException {
-                if (ArtifactUtils.isArtifact(t)) {
-                    set.add(p.relativize(t));
-                }
-                return FileVisitResult.CONTINUE;
-            }
-        });
+    private static final class FeaturePackTask {
+
+        private final Path fppath;
+        private final Path version;
+        private final Path fpFile;
+        private FeaturePackMetadata metadata;
+        private ScannedFeaturePack scannedFp;
+        private String patchVersion;
+        private FPID patchGav;
+
+        private FeaturePackTask(Path fppath, Path version, Path fpFile) {
+            this.fppath = fppath;
+            this.version = version;
+            this.fpFile = fpFile;
+        }
     }
 }
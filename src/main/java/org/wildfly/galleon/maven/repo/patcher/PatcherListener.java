@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+/**
+ * Receive the events of a patcher run. All the methods do nothing by default.
+ * Messages and feature-pack events can be sent concurrently from the patcher
+ * threads.
+ *
+ * @author jdenise
+ */
+public interface PatcherListener {
+
+    /**
+     * The phases of a patcher run, in execution order.
+     */
+    enum Phase {
+        /**
+         * Read the original repository (and extract it when not streaming)
+         * and the maven repo patch.
+         */
+        READ_REPOSITORIES,
+        /**
+         * Verify the checksums of the maven repo patch files.
+         */
+        VERIFY_CHECKSUMS,
+        /**
+         * Read the galleon feature-packs of the original repository.
+         */
+        SCAN_FEATURE_PACKS,
+        /**
+         * Build and install the galleon patches, remove the patched
+         * artifacts.
+         */
+        CREATE_PATCHES,
+        /**
+         * Write the generated repository (or its delta).
+         */
+        WRITE_OUTPUT
+    }
+
+    default void phaseStarted(Phase phase) {
+    }
+
+    default void phaseCompleted(Phase phase, long durationMillis) {
+    }
+
+    /**
+     * Called while the output is written, about every megabyte and once
+     * the output is complete.
+     *
+     * @param bytesWritten The number of bytes written so far.
+     */
+    default void outputProgress(long bytesWritten) {
+    }
+
+    default void info(String message) {
+    }
+
+    default void warning(String message) {
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+
+/**
+ * Options that control how the patcher runs.
+ *
+ * @author jdenise
+ */
+final class PatcherOptions {
+
+    private static final PatcherListener NO_LISTENER = new PatcherListener() {
+    };
+
+    private boolean streaming;
+    private Path featurePackCache;
+    private boolean persistIndex;
+    private boolean delta;
+    private boolean reproducible;
+    private boolean boundedMemory;
+    private int parallelism = ParallelUtils.defaultParallelism();
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private Path workDir;
+    private PatcherListener listener = NO_LISTENER;
+    private MetricsReporter metricsReporter;
+    private final IoStats ioStats = new IoStats();
+
+    PatcherOptions() {
+    }
+
+    PatcherOptions(PatcherOptions options) {
+        streaming = options.streaming;
+        featurePackCache = options.featurePackCache;
+        persistIndex = options.persistIndex;
+        delta = options.delta;
+        reproducible = options.reproducible;
+        boundedMemory = options.boundedMemory;
+        parallelism = options.parallelism;
+        compressionLevel = options.compressionLevel;
+        workDir = options.workDir;
+        listener = options.listener;
+        metricsReporter = options.metricsReporter;
+    }
+
+    /**
+     * @return the counters of the runs that use these options, not copied.
+     */
+    IoStats getIoStats() {
+        return ioStats;
+    }
+
+    /**
+     * @return the reporter of the run metrics, null if none.
+     */
+    MetricsReporter getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    PatcherOptions setMetricsReporter(MetricsReporter metricsReporter) {
+        this.metricsReporter = metricsReporter;
+        return this;
+    }
+
+    /**
+     * @return the listener that receives the messages and progress events.
+     */
+    PatcherListener getListener() {
+        return listener;
+    }
+
+    PatcherOptions setListener(PatcherListener listener) {
+        this.listener = listener == null ? NO_LISTENER : listener;
+        return this;
+    }
+
+    /**
+     * @return the directory where the tool writes its temporary files, deleted
+     * when the tool starts. Null if each run creates its own temporary
+     * directory.
+     */
+    Path getWorkDir() {
+        return workDir;
+    }
+
+    PatcherOptions setWorkDir(Path workDir) {
+        this.workDir = workDir;
+        return this;
+    }
+
+    /**
+     * @return true if the original repo is not extracted.
+     */
+    boolean isStreaming() {
+        return streaming || boundedMemory;
+    }
+
+    PatcherOptions setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    /**
+     * @return the directory of the feature-pack metadata cache, null if no
+     * cache.
+     */
+    Path getFeaturePackCache() {
+        return featurePackCache;
+    }
+
+    PatcherOptions setFeaturePackCache(Path featurePackCache) {
+        this.featurePackCache = featurePackCache;
+        return this;
+    }
+
+    /**
+     * @return true if the original repo index is persisted next to the zip.
+     */
+    boolean isPersistIndex() {
+        return persistIndex;
+    }
+
+    PatcherOptions setPersistIndex(boolean persistIndex) {
+        this.persistIndex = persistIndex;
+        return this;
+    }
+
+    /**
+     * @return true if only the changes are written to the output file.
+     */
+    boolean isDelta() {
+        return delta;
+    }
+
+    PatcherOptions setDelta(boolean delta) {
+        this.delta = delta;
+        return this;
+    }
+
+    /**
+     * @return true if generated archives must be byte-identical for identical
+     * inputs.
+     */
+    boolean isReproducible() {
+        return reproducible;
+    }
+
+    PatcherOptions setReproducible(boolean reproducible) {
+        this.reproducible = reproducible;
+        return this;
+    }
+
+    /**
+     * @return true if the heap used by a run must not grow with the size of
+     * the original repository. Implies streaming.
+     */
+    boolean isBoundedMemory() {
+        return boundedMemory;
+    }
+
+    PatcherOptions setBoundedMemory(boolean boundedMemory) {
+        this.boundedMemory = boundedMemory;
+        return this;
+    }
+
+    /**
+     * @return the number of threads used by parallel tasks.
+     */
+    int getParallelism() {
+        return parallelism;
+    }
+
+    PatcherOptions setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid number of threads " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @return the deflate level of the new entries of the generated repo.
+     */
+    int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    PatcherOptions setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+}
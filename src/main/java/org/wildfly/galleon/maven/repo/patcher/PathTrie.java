@@ -0,0 +1,369 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of repository paths stored as a tree of interned segments. The
+ * group, artifact and version directories shared by many paths are stored
+ * once, paths are only built when returned. Files named after their
+ * artifact and version directories ({@code <artifactId>-<version>}) only
+ * keep the rest of their name ({@code .jar}, {@code .pom.sha1}, ...),
+ * interned too. Children are kept in sorted arrays, so the files of a
+ * directory whose name starts with a given name are a range of its
+ * children.
+ *
+ * @author jdenise
+ */
+final class PathTrie implements Iterable<Path> {
+
+    private static final class Node {
+
+        private final String segment;
+        // The common prefix of the file names in this directory.
+        private String stem;
+        private Node[] children;
+        private int count;
+        private boolean member;
+        // The name is the stem of the parent followed by the segment.
+        private final boolean stemmed;
+
+        private Node(String segment, boolean stemmed) {
+            this.segment = segment;
+            this.stemmed = stemmed;
+        }
+
+        /**
+         * @return The index of the child or (-(insertion point) - 1).
+         */
+        private int search(String segment) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(children[mid], segment);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private Node child(String segment) {
+            int i = search(segment);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node addChild(int i, String segment, boolean stemmed) {
+            if (children == null) {
+                children = new Node[2];
+            } else if (count == children.length) {
+                children = Arrays.copyOf(children, count + (count >> 1));
+            }
+            System.arraycopy(children, i, children, i + 1, count - i);
+            Node child = new Node(segment, stemmed);
+            children[i] = child;
+            count += 1;
+            return child;
+        }
+
+        private List<Node> children() {
+            return count == 0 ? Collections.<Node>emptyList() : Arrays.asList(children).subList(0, count);
+        }
+
+        private String name(Node child) {
+            return child.stemmed ? stem + child.segment : child.segment;
+        }
+
+        /**
+         * Compares the name of a child with a name, as String.compareTo
+         * does, without building the child name.
+         */
+        private int compare(Node child, String name) {
+            if (!child.stemmed) {
+                return child.segment.compareTo(name);
+            }
+            int cmp = diff(stem, name, 0);
+            if (cmp != 0) {
+                return cmp;
+            }
+            if (name.length() < stem.length()) {
+                return 1;
+            }
+            cmp = diff(child.segment, name, stem.length());
+            return cmp != 0 ? cmp : child.segment.length() - (name.length() - stem.length());
+        }
+
+        private boolean startsWith(Node child, String name) {
+            if (!child.stemmed) {
+                return child.segment.startsWith(name);
+            }
+            if (name.length() <= stem.length()) {
+                return stem.startsWith(name);
+            }
+            return name.startsWith(stem) && child.segment.startsWith(name.substring(stem.length()));
+        }
+
+        // The difference of the first different chars of str and of the name
+        // from offset, 0 if there is none.
+        private static int diff(String str, String name, int offset) {
+            int length = Math.min(str.length(), name.length() - offset);
+            for (int i = 0; i < length; i++) {
+                int cmp = str.charAt(i) - name.charAt(offset + i);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final Node root = new Node(null, false);
+    private int size;
+
+    /**
+     * @return true if the path was not already present.
+     */
+    boolean add(Path path) {
+        String[] segments = segments(path);
+        if (segments.length == 0 || path.isAbsolute()) {
+            throw new IllegalArgumentException("Invalid path " + path);
+        }
+        Node parent = null;
+        Node node = root;
+        int last = segments.length - 1;
+        for (int i = 0; i <= last; i++) {
+            String segment = segments[i];
+            int index = node.search(segment);
+            if (index >= 0) {
+                parent = node;
+                node = node.children[index];
+                continue;
+            }
+            boolean stemmed = false;
+            // The segment of a stemmed node is not its name, don't stem its children.
+            if (i == last && parent != null && parent != root && !parent.stemmed && !node.stemmed) {
+                if (node.stem == null) {
+                    node.stem = parent.segment + "-" + node.segment;
+                }
+                stemmed = segment.startsWith(node.stem);
+                if (stemmed) {
+                    segment = segment.substring(node.stem.length());
+                }
+            }
+            Node child = node.addChild(-index - 1, ArtifactCoordinate.intern(segment), stemmed);
+            parent = node;
+            node = child;
+        }
+        if (node.member) {
+            return false;
+        }
+        node.member = true;
+        size += 1;
+        return true;
+    }
+
+    boolean contains(Path path) {
+        Node node = find(path);
+        return node != null && node.member;
+    }
+
+    /**
+     * @return true if paths located in this directory have been added.
+     */
+    boolean containsDir(Path dir) {
+        Node node = find(dir);
+        return node != null && node.count > 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The paths located directly in the directory, sorted by name.
+     */
+    List<Path> children(Path dir) {
+        Node node = find(dir);
+        return node == null ? Collections.<Path>emptyList() : members(dir, node, node.children());
+    }
+
+    /**
+     * @return The paths located in the same directory as the file whose name
+     * starts with the file name, the file included, sorted by name.
+     */
+    List<Path> startingWith(Path file) {
+        Path dir = file.getParent();
+        Node node = dir == null ? root : find(dir);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        String name = file.getFileName().toString();
+        int from = node.search(name);
+        int to = from < 0 ? -from - 1 : from;
+        from = to;
+        while (to < node.count && node.startsWith(node.children[to], name)) {
+            to += 1;
+        }
+        return members(dir, node, node.children().subList(from, to));
+    }
+
+    /**
+     * @return The directories containing paths, sorted.
+     */
+    List<Path> parents() {
+        List<Path> parents = new ArrayList<>();
+        parents(null, root, parents);
+        return parents;
+    }
+
+    /**
+     * Iterates over the paths, sorted by segments.
+     */
+    @Override
+    public Iterator<Path> iterator() {
+        Deque<Iterator<Node>> stack = new ArrayDeque<>();
+        // The directories of the iterators, the root directory is not in it.
+        Deque<Path> dirs = new ArrayDeque<>();
+        Deque<Node> parents = new ArrayDeque<>();
+        stack.push(root.children().iterator());
+        parents.push(root);
+        return new Iterator<Path>() {
+            private Path next = advance();
+
+            private Path advance() {
+                while (!stack.isEmpty()) {
+                    Iterator<Node> it = stack.peek();
+                    if (!it.hasNext()) {
+                        stack.pop();
+                        dirs.pollFirst();
+                        parents.pop();
+                        continue;
+                    }
+                    Node node = it.next();
+                    Path path = resolve(dirs.peekFirst(), parents.peek(), node);
+                    if (node.count > 0) {
+                        stack.push(node.children().iterator());
+                        dirs.push(path);
+                        parents.push(node);
+                    }
+                    if (node.member) {
+                        return path;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Path next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Path path = next;
+                next = advance();
+                return path;
+            }
+        };
+    }
+
+    private Node find(Path path) {
+        Node node = root;
+        for (String segment : segments(path)) {
+            node = node.child(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    // Split the path string once, instead of creating a path per name.
+    private static String[] segments(Path path) {
+        String str = path.toString();
+        if (str.isEmpty()) {
+            return new String[0];
+        }
+        String separator = path.getFileSystem().getSeparator();
+        int count = 1;
+        for (int i = str.indexOf(separator); i >= 0; i = str.indexOf(separator, i + separator.length())) {
+            count += 1;
+        }
+        String[] segments = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = str.indexOf(separator, start);
+            segments[i] = str.substring(start, end);
+            start = end + separator.length();
+        }
+        segments[count - 1] = str.substring(start);
+        return segments;
+    }
+
+    private static void parents(Path dir, Node node, List<Path> parents) {
+        if (dir != null) {
+            for (Node child : node.children()) {
+                if (child.member) {
+                    parents.add(dir);
+                    break;
+                }
+            }
+        }
+        for (Node child : node.children()) {
+            if (child.count > 0) {
+                parents(resolve(dir, node, child), child, parents);
+            }
+        }
+    }
+
+    private static List<Path> members(Path dir, Node parent, List<Node> nodes) {
+        List<Path> paths = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.member) {
+                paths.add(resolve(dir, parent, node));
+            }
+        }
+        return paths;
+    }
+
+    private static Path resolve(Path dir, Node parent, Node node) {
+        String name = parent.name(node);
+        return dir == null ? Paths.get(name) : dir.resolve(name);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+/**
+ * What a phase of a patcher run has cost. Bytes, entries and CPU time are
+ * counted for the run. The heap is measured for the whole JVM, it is not
+ * reported if other runs were executed concurrently.
+ *
+ * @author jdenise
+ */
+public final class PhaseMetrics {
+
+    private final PatcherListener.Phase phase;
+    private final long wallTimeNanos;
+    private final long cpuTimeNanos;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long entries;
+    private final long peakHeapBytes;
+
+    PhaseMetrics(PatcherListener.Phase phase, long wallTimeNanos, long cpuTimeNanos, long bytesRead, long bytesWritten,
+            long entries, long peakHeapBytes) {
+        this.phase = phase;
+        this.wallTimeNanos = wallTimeNanos;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.entries = entries;
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public PatcherListener.Phase getPhase() {
+        return phase;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    /**
+     * @return The CPU time of the run threads, -1 if not supported.
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * @return The bytes read from the repositories, the maven repo patch and
+     * the work dir.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The bytes written to the output, the generated patches and the
+     * work dir.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return The zip entries extracted or written.
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The peak of the used heap during the phase, -1 if other runs
+     * were executed during the phase.
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+        return phase + ": " + wallTimeNanos / 1000000 + " ms, cpu " + (cpuTimeNanos < 0 ? "n/a" : cpuTimeNanos / 1000000 + " ms")
+                + ", read " + bytesRead + " bytes, written " + bytesWritten + " bytes, " + entries + " entries, peak heap "
+                + (peakHeapBytes < 0 ? "n/a" : peakHeapBytes / (1024 * 1024) + " MB");
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.wildfly.galleon.maven.repo.patcher.PatcherListener.Phase;
+
+/**
+ * Measure the phases of a run and emit a JFR event for each of them when JFR
+ * is available. The JFR event is compiled apart from the Java 8 sources, when
+ * building with Java 11 or newer, and is loaded reflectively. The CPU time is the one of the run threads. The heap is
+ * shared by the runs executed in the JVM: its peak is reset and reported only
+ * for the phases during which no other run was executed.
+ *
+ * @author jdenise
+ */
+final class PhaseRecorder {
+
+    /**
+     * Emit the phase events, implemented by {@code PhaseEvent.Sink}.
+     */
+    interface EventSink {
+
+        Object begin(Phase phase);
+
+        void commit(Object event, PhaseMetrics metrics);
+    }
+
+    // Null if JFR or the JFR event is not available.
+    private static final EventSink EVENTS = loadEvents();
+    // The runs in progress in the JVM and the number of runs started.
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+    private static final AtomicLong STARTED = new AtomicLong();
+
+    private final IoStats stats;
+    // Null if the thread CPU time is not supported.
+    private final CpuClock clock;
+    private boolean finished;
+    private final List<PhaseMetrics> phases = new ArrayList<>();
+    private Phase phase;
+    private long start;
+    private long cpuStart;
+    private long readStart;
+    private long writtenStart;
+    private long entriesStart;
+    // -1 if another run was in progress when the phase started.
+    private long startedRuns;
+    // A PhaseEvent, null if JFR is not available.
+    private Object event;
+
+    /**
+     * Start recording the run executed by the current thread, until
+     * {@link #finish()} is called.
+     */
+    PhaseRecorder(IoStats stats) {
+        this.stats = stats;
+        RUNNING.incrementAndGet();
+        STARTED.incrementAndGet();
+        clock = CpuClock.start();
+    }
+
+    private static EventSink loadEvents() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            Class<?> sink = Class.forName(PhaseRecorder.class.getPackage().getName() + ".PhaseEvent$Sink");
+            return (EventSink) sink.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    void start(Phase phase) {
+        this.phase = phase;
+        startedRuns = isAlone() ? STARTED.get() : -1;
+        if (startedRuns >= 0) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+        readStart = stats.getBytesRead();
+        writtenStart = stats.getBytesWritten();
+        entriesStart = stats.getEntries();
+        cpuStart = getCpuTime();
+        if (EVENTS != null) {
+            event = EVENTS.begin(phase);
+        }
+        start = System.nanoTime();
+    }
+
+    /**
+     * Complete the current phase.
+     */
+    PhaseMetrics complete() {
+        long wallTime = System.nanoTime() - start;
+        long cpu = getCpuTime();
+        long peakHeap = -1;
+        // The peak is not reset by a run started during the phase, but it would include its heap.
+        if (startedRuns >= 0 && isAlone() && STARTED.get() == startedRuns) {
+            peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+        }
+        PhaseMetrics metrics = new PhaseMetrics(phase, wallTime, cpu < 0 || cpuStart < 0 ? -1 : cpu - cpuStart,
+                stats.getBytesRead() - readStart, stats.getBytesWritten() - writtenStart, stats.getEntries() - entriesStart,
+                peakHeap);
+        phases.add(metrics);
+        if (event != null) {
+            EVENTS.commit(event, metrics);
+            event = null;
+        }
+        phase = null;
+        return metrics;
+    }
+
+    /**
+     * @return The completed phases, the phase in progress (the one that
+     * failed) is completed first.
+     */
+    List<PhaseMetrics> finish() {
+        if (phase != null) {
+            complete();
+        }
+        if (!finished) {
+            finished = true;
+            if (clock != null) {
+                clock.stop();
+            }
+            RUNNING.decrementAndGet();
+        }
+        return getPhases();
+    }
+
+    List<PhaseMetrics> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(phases));
+    }
+
+    private static boolean isAlone() {
+        return RUNNING.get() == 1;
+    }
+
+    private long getCpuTime() {
+        return clock == null ? -1 : clock.getCpuTime();
+    }
+}
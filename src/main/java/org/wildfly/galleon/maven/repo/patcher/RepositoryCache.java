@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Original repositories kept open between runs: the zip central directory
+ * and the repository index are read once. A repository is reloaded when its
+ * size or last modified time changes. Above the maximum number of
+ * repositories, the least recently used one is evicted, it is closed once the
+ * runs that use it are done.
+ * <p>
+ * Repositories are read outside the cache lock: the first run that opens a
+ * repository reads it, the concurrent runs on the same repository wait for
+ * it while runs on other repositories go on.
+ *
+ * @author jdenise
+ */
+final class RepositoryCache implements Closeable {
+
+    private final class Entry implements Closeable {
+
+        private final long size;
+        private final long time;
+        private final FutureTask<Void> loader;
+        // Set by the loader, null if not loaded or if loading failed.
+        private volatile ZipArchive archive;
+        private volatile RepositoryIndex index;
+        private int users;
+        private boolean evicted;
+
+        private Entry(Path key, long size, long time, PatcherOptions options) {
+            this.size = size;
+            this.time = time;
+            loader = new FutureTask<>(() -> {
+                load(key, options);
+                return null;
+            });
+        }
+
+        private void load(Path key, PatcherOptions options) throws Exception {
+            options.getListener().info("Reading maven repo " + key);
+            ZipSource source = ZipSource.of(key);
+            SeekableByteChannel channel = source.openChannel();
+            try {
+                ZipFile zipFile = source.open(channel);
+                ZipArchive zipArchive = ZipArchive.of(zipFile, channel);
+                try {
+                    index = RepositoryIndex.get(zipFile, source, options);
+                } catch (Exception ex) {
+                    zipArchive.close();
+                    throw ex;
+                }
+                archive = zipArchive;
+            } catch (Exception ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Wait for the repository to be loaded.
+         */
+        private void await() throws Exception {
+            try {
+                loader.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw ex;
+            }
+        }
+
+        private void closeArchive() throws IOException {
+            if (archive != null) {
+                archive.close();
+            }
+        }
+
+        // Called when a run is done with the repository.
+        @Override
+        public void close() throws IOException {
+            release(this);
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    RepositoryCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Invalid repository cache size " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Open a repository in streaming mode, the repository must be closed to
+     * be released. Concurrent runs on a new repository read it once.
+     */
+    MavenRepository open(Path zip, PatcherOptions options) throws Exception {
+        Path key = zip.toAbsolutePath().normalize();
+        long size = Files.size(key);
+        long time = Files.getLastModifiedTime(key).toMillis();
+        Entry entry;
+        boolean load = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && (entry.size != size || entry.time != time)) {
+                options.getListener().info("Maven repo " + key + " has changed, reloading it");
+                entries.remove(key);
+                evict(entry);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(key, size, time, options);
+                entries.put(key, entry);
+                evictEldest();
+                load = true;
+            } else {
+                options.getListener().info("Using cached maven repo " + key);
+            }
+            // The run is a user while the repository is loaded, it is not closed if evicted meanwhile.
+            entry.users += 1;
+        }
+        try {
+            if (load) {
+                entry.loader.run();
+            }
+            entry.await();
+        } catch (Exception ex) {
+            synchronized (this) {
+                // The next run reads the repository again.
+                entries.remove(key, entry);
+            }
+            release(entry);
+            throw ex;
+        }
+        return ZippedMavenRepository.newInstance(entry.archive, entry.index, options, entry);
+    }
+
+    /**
+     * @return The cached repositories, from the least to the most recently
+     * used.
+     */
+    synchronized List<Path> getRepositories() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    private void evictEldest() throws IOException {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries) {
+            Entry eldest = it.next();
+            it.remove();
+            evict(eldest);
+        }
+    }
+
+    private void evict(Entry entry) throws IOException {
+        entry.evicted = true;
+        if (entry.users == 0) {
+            entry.closeArchive();
+        }
+    }
+
+    private synchronized void release(Entry entry) throws IOException {
+        entry.users -= 1;
+        if (entry.evicted && entry.users == 0) {
+            entry.closeArchive();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Entry entry : entries.values()) {
+            evict(entry);
+        }
+        entries.clear();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * A zipped delta between the original repository and the generated one. It
+ * contains the added and replaced files (new artifacts, generated patches,
+ * patches.xml) at their location in the repository, plus a list of the
+ * deleted entries. A deleted entry that ends with '/' is a deleted
+ * directory.
+ *
+ * @author jdenise
+ */
+final class RepositoryDelta {
+
+    static final String DELETED_ENTRIES = "deleted-entries.txt";
+
+    static void write(ZipSink output, Set<String> deleted, RepositoryIndex index, Map<String, AddedFile> added,
+            Map<String, AddedFile> addedInParent, PatcherOptions options) throws IOException {
+        options.getListener().info("Writing maven repo delta to " + output);
+        // In the tool work dir, deleted with it if the run is killed.
+        Files.createDirectories(options.getWorkDir());
+        Path deletedFile = Files.createTempFile(options.getWorkDir(), "deleted-entries", ".txt");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(deletedFile, StandardCharsets.UTF_8)) {
+                for (String name : deleted) {
+                    writer.write(name);
+                    writer.newLine();
+                }
+            }
+            try (RepositoryZipWriter writer = new RepositoryZipWriter(output, options)) {
+                writer.add(DELETED_ENTRIES, deletedFile);
+                for (Map.Entry<String, AddedFile> entry : added.entrySet()) {
+                    writer.add(index.getRootPrefix() + entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<String, AddedFile> entry : addedInParent.entrySet()) {
+                    writer.add(index.getParentPrefix() + entry.getKey(), entry.getValue());
+                }
+                writer.printSummary();
+            }
+        } finally {
+            Files.deleteIfExists(deletedFile);
+        }
+    }
+
+    /**
+     * Generate the full repository from the original one and a delta, in a
+     * single pass. No entry is recompressed.
+     */
+    static void apply(Path originalMavenRepo, Path delta, Path outputFile, PatcherOptions options) throws IOException {
+        options.getListener().info("Applying maven repo delta " + delta + " to " + originalMavenRepo);
+        try (ZipArchive base = ZipArchive.of(new ZipFile(originalMavenRepo.toFile()));
+                ZipArchive changes = ZipArchive.of(new ZipFile(delta.toFile()))) {
+            ZipArchiveEntry deletedEntry = changes.getEntry(DELETED_ENTRIES);
+            if (deletedEntry == null) {
+                throw new IOException(delta + " is not a maven repo delta, " + DELETED_ENTRIES + " is missing");
+            }
+            Set<String> deleted = new HashSet<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(changes.getInputStream(deletedEntry),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        deleted.add(line);
+                    }
+                }
+            }
+            try (RepositoryZipWriter writer = new RepositoryZipWriter(outputFile, options)) {
+                Enumeration<ZipArchiveEntry> entries = base.getEntries();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    // Replaced files are taken from the delta, directories are written once.
+                    if (!isDeleted(entry.getName(), deleted)
+                            && (entry.isDirectory() || changes.getEntry(entry.getName()) == null)) {
+                        writer.copyRaw(base, entry);
+                    }
+                }
+                entries = changes.getEntries();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    if (!DELETED_ENTRIES.equals(entry.getName())) {
+                        writer.copyRaw(changes, entry);
+                    }
+                }
+                writer.printSummary();
+            }
+        }
+    }
+
+    private static boolean isDeleted(String name, Set<String> deleted) {
+        if (deleted.contains(name)) {
+            return true;
+        }
+        int i = name.indexOf('/');
+        while (i >= 0) {
+            if (deleted.contains(name.substring(0, i + 1))) {
+                return true;
+            }
+            i = name.indexOf('/', i + 1);
+        }
+        return false;
+    }
+}
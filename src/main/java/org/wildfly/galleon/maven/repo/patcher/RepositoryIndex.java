@@ -0,0 +1,253 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Sorted names of all the entries of a zipped maven repository, a name
+ * encodes the GAV, classifier and extension. Built from the zip central
+ * directory and optionally persisted next to the zip, so the names are not
+ * sorted again. The zip is still opened to read the entries. Names are stored
+ * front-coded in the persisted form.
+ *
+ * @author jdenise
+ */
+final class RepositoryIndex {
+
+    static final String INDEX_SUFFIX = ".index";
+    private static final String MAVEN_REPOSITORY = "maven-repository/";
+    private static final int MAGIC = 0x47524958;
+    private static final int FORMAT_VERSION = 1;
+
+    private final String parentPrefix;
+    private final String rootPrefix;
+    private final String[] names;
+    // Null if the index is held in the arrays.
+    private final MappedEntries mapped;
+
+    /**
+     * Detect the prefixes from the entry names, in the central directory
+     * order.
+     */
+    static final class Prefixes implements Consumer<String> {
+
+        private String parent;
+        private String root;
+
+        @Override
+        public void accept(String name) {
+            if (parent == null) {
+                int i = name.indexOf('/');
+                parent = i < 0 ? "" : name.substring(0, i + 1);
+            }
+            if (root == null) {
+                int i = name.startsWith(MAVEN_REPOSITORY) ? 0 : name.indexOf("/" + MAVEN_REPOSITORY);
+                if (i >= 0) {
+                    root = name.substring(0, i == 0 ? MAVEN_REPOSITORY.length() : i + 1 + MAVEN_REPOSITORY.length());
+                }
+            }
+        }
+
+        private void check(Object zip) throws Exception {
+            if (root == null) {
+                throw new Exception("No maven-repository directory found in " + zip);
+            }
+        }
+    }
+
+    private RepositoryIndex(String parentPrefix, String rootPrefix, String[] names) {
+        this.parentPrefix = parentPrefix;
+        this.rootPrefix = rootPrefix;
+        this.names = names;
+        mapped = null;
+    }
+
+    private RepositoryIndex(String parentPrefix, String rootPrefix, MappedEntries mapped) {
+        this.parentPrefix = parentPrefix;
+        this.rootPrefix = rootPrefix;
+        this.mapped = mapped;
+        names = null;
+    }
+
+    /**
+     * An index backed by mapped entries, sorted by UTF-8 bytes.
+     */
+    static RepositoryIndex of(Prefixes prefixes, MappedEntries mapped, Object zip) throws Exception {
+        prefixes.check(zip);
+        return new RepositoryIndex(prefixes.parent, prefixes.root, mapped);
+    }
+
+    static RepositoryIndex build(ZipFile zipFile, Object zip) throws Exception {
+        List<String> entries = new ArrayList<>();
+        Prefixes prefixes = new Prefixes();
+        Enumeration<ZipArchiveEntry> en = zipFile.getEntries();
+        while (en.hasMoreElements()) {
+            String name = en.nextElement().getName();
+            entries.add(name);
+            prefixes.accept(name);
+        }
+        prefixes.check(zip);
+        String[] names = entries.toArray(new String[entries.size()]);
+        Arrays.sort(names);
+        return new RepositoryIndex(prefixes.parent, prefixes.root, names);
+    }
+
+    /**
+     * A zip read from a channel has no index file.
+     */
+    static RepositoryIndex get(ZipFile zipFile, ZipSource zip, PatcherOptions options) throws Exception {
+        if (options.isPersistIndex() && zip.getFile() != null) {
+            return loadOrBuild(zipFile, zip.getFile(), options.getListener());
+        }
+        return build(zipFile, zip);
+    }
+
+    /**
+     * Load the index persisted next to the zip, or build it and persist it.
+     */
+    static RepositoryIndex loadOrBuild(ZipFile zipFile, Path zip, PatcherListener listener) throws Exception {
+        Path indexFile = zip.resolveSibling(zip.getFileName() + INDEX_SUFFIX);
+        long zipSize = Files.size(zip);
+        long zipTime = Files.getLastModifiedTime(zip).toMillis();
+        if (Files.exists(indexFile)) {
+            RepositoryIndex index = load(indexFile, zipSize, zipTime, listener);
+            if (index != null) {
+                listener.info("Using repository index " + indexFile);
+                return index;
+            }
+        }
+        RepositoryIndex index = build(zipFile, zip);
+        index.store(indexFile, zipSize, zipTime);
+        listener.info("Repository index stored in " + indexFile);
+        return index;
+    }
+
+    private static RepositoryIndex load(Path indexFile, long zipSize, long zipTime, PatcherListener listener) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(indexFile))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (in.readLong() != zipSize || in.readLong() != zipTime) {
+                // Stale index
+                return null;
+            }
+            String parent = in.readUTF();
+            String root = in.readUTF();
+            int size = in.readInt();
+            String[] names = new String[size];
+            String previous = "";
+            for (int i = 0; i < size; i++) {
+                int common = in.readUnsignedShort();
+                names[i] = previous.substring(0, common) + in.readUTF();
+                previous = names[i];
+            }
+            return new RepositoryIndex(parent, root, names);
+        } catch (Exception ex) {
+            listener.warning("Ignoring invalid repository index " + indexFile + ": " + ex);
+            return null;
+        }
+    }
+
+    private void store(Path indexFile, long zipSize, long zipTime) throws IOException {
+        Path tmp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(zipSize);
+                out.writeLong(zipTime);
+                out.writeUTF(parentPrefix);
+                out.writeUTF(rootPrefix);
+                out.writeInt(names.length);
+                String previous = "";
+                for (int i = 0; i < names.length; i++) {
+                    int common = commonPrefix(previous, names[i]);
+                    out.writeShort(common);
+                    out.writeUTF(names[i].substring(common));
+                    previous = names[i];
+                }
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static int commonPrefix(String s1, String s2) {
+        int max = Math.min(Math.min(s1.length(), s2.length()), 0xFFFF);
+        int i = 0;
+        while (i < max && s1.charAt(i) == s2.charAt(i)) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /**
+     * @return Prefix of the directory that contains the maven-repository
+     * directory.
+     */
+    String getParentPrefix() {
+        return parentPrefix;
+    }
+
+    /**
+     * @return Prefix of all the maven-repository entries.
+     */
+    String getRootPrefix() {
+        return rootPrefix;
+    }
+
+    int size() {
+        return mapped == null ? names.length : mapped.size();
+    }
+
+    /**
+     * @return The position of the entry, or a negative value if not found.
+     */
+    int find(String name) {
+        return mapped == null ? Arrays.binarySearch(names, name) : mapped.find(name);
+    }
+
+    /**
+     * @return The position of the first entry greater or equal to name.
+     */
+    int ceiling(String name) {
+        int i = find(name);
+        return i < 0 ? -(i + 1) : i;
+    }
+
+    String getName(int i) {
+        return mapped == null ? names[i] : mapped.getName(i);
+    }
+}
@@ -0,0 +1,689 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * Writes the generated zipped repository. Entries that are not modified are
+ * copied without being inflated and deflated again: compressed bytes, CRC and
+ * sizes are taken from the source archive.
+ * <p>
+ * New entries that are already compressed (jar, zip, so, ...) are stored,
+ * deflating them again costs CPU for almost no gain. The other ones (poms,
+ * checksums, ...) are deflated at the configured level.
+ * <p>
+ * New entries are compressed on a pool of workers, pigz style: files are cut
+ * in chunks, each chunk is deflated independently (primed with the last 32KB
+ * of the previous chunk) and ends on a byte boundary, so the chunks
+ * concatenate to a single deflate stream. Entries are written in the order
+ * they are added. Chunks are submitted to the workers as the writer consumes
+ * the previous ones, at most a bounded number of chunks are compressed ahead
+ * of the writer, including the chunks of a large entry.
+ * <p>
+ * The CRC of a stored entry is computed while it is copied when the local
+ * header can be rewritten (seekable output). Otherwise the CRC is needed
+ * before the data: small files are read once in memory by a worker, larger
+ * ones are read a first time to compute their CRC.
+ * <p>
+ * In reproducible mode, the new entries get a fixed timestamp and fixed
+ * permissions, so identical inputs produce byte-identical archives.
+ * <p>
+ * In bounded memory mode, the zip is written by a {@link BoundedZipOutput}
+ * and the directories copied from the source archive can be matched by a
+ * predicate instead of being recorded in memory.
+ *
+ * @author jdenise
+ */
+final class RepositoryZipWriter implements Closeable {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final long PROGRESS_STEP = 1024 * 1024;
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "jar", "war", "ear", "rar", "zip", "so", "gz", "tgz"));
+    // Zip timestamps are local times, use the same local time whatever the time zone.
+    private static final long REPRODUCIBLE_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1).getTimeInMillis();
+
+    // One of them is null.
+    private final ZipArchiveOutputStream out;
+    private final BoundedZipOutput boundedOut;
+    private final ExecutorService executor;
+    private final int maxPendingChunks;
+    private final int level;
+    private final boolean reproducible;
+    private final PatcherListener listener;
+    private final IoStats stats;
+    // Null if the progress is not reported.
+    private final ZipSink sink;
+    private final Deque<PendingEntry> pending = new ArrayDeque<>();
+    private final Set<String> writtenDirs = new HashSet<>();
+    private Predicate<String> copiedDirs;
+    private int pendingChunks;
+    private long copiedEntries;
+    private long addedEntries;
+    // Written by the writer thread only.
+    private long storedEntries;
+    private long storedBytes;
+    private long deflatedEntries;
+    private long deflatedBytes;
+    private long deflatedCompressedBytes;
+    private long reportedBytes;
+
+    RepositoryZipWriter(Path outputFile, PatcherOptions options) throws IOException {
+        this(ZipSink.of(outputFile), options);
+    }
+
+    /**
+     * Write a generated repository, the progress is reported to the options
+     * listener.
+     */
+    RepositoryZipWriter(ZipSink sink, PatcherOptions options) throws IOException {
+        this(options.isBoundedMemory() ? null : sink.open(),
+                options.isBoundedMemory() ? new BoundedZipOutput(sink.openStream(), options.getWorkDir()) : null,
+                options, options.getParallelism(), sink);
+    }
+
+    /**
+     * Write to a stream, the archive is written sequentially.
+     */
+    RepositoryZipWriter(OutputStream outputStream, PatcherOptions options, int parallelism) {
+        this(new ZipArchiveOutputStream(outputStream), null, options, parallelism, null);
+    }
+
+    private RepositoryZipWriter(ZipArchiveOutputStream out, BoundedZipOutput boundedOut, PatcherOptions options,
+            int parallelism, ZipSink sink) {
+        this.out = out;
+        this.boundedOut = boundedOut;
+        this.sink = sink;
+        listener = options.getListener();
+        stats = options.getIoStats();
+        if (out != null) {
+            out.setUseZip64(Zip64Mode.AsNeeded);
+        }
+        executor = ParallelUtils.newExecutor(parallelism, "deflate");
+        maxPendingChunks = 4 * parallelism;
+        level = options.getCompressionLevel();
+        reproducible = options.isReproducible();
+    }
+
+    static boolean isStored(String name) {
+        int i = name.lastIndexOf('.');
+        return i > name.lastIndexOf('/') && STORED_EXTENSIONS.contains(name.substring(i + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * The directories of the source archive the caller copies, all of them
+     * before any entry is added. They are matched by the predicate instead of
+     * being recorded.
+     */
+    void setCopiedDirs(Predicate<String> copiedDirs) {
+        this.copiedDirs = copiedDirs;
+    }
+
+    private boolean isCopiedDir(String dir) {
+        return copiedDirs != null && copiedDirs.test(dir);
+    }
+
+    /**
+     * Copy an entry of the source archive as is.
+     */
+    void copyRaw(ZipArchive source, ZipArchiveEntry entry) throws IOException {
+        if (entry.isDirectory() && !isCopiedDir(entry.getName()) && !writtenDirs.add(entry.getName())) {
+            return;
+        }
+        enqueue(new RawEntry(source, entry, entry));
+        stats.read(entry.getCompressedSize());
+        copiedEntries += 1;
+    }
+
+    /**
+     * Copy an entry of another archive as is, under a new name. Its parent
+     * directories are added if not already present.
+     */
+    void copyRaw(ZipArchive source, ZipArchiveEntry entry, String name) throws IOException {
+        addParentDirs(name);
+        ZipArchiveEntry copy = new ZipArchiveEntry(name);
+        copy.setMethod(entry.getMethod());
+        copy.setCrc(entry.getCrc());
+        copy.setSize(entry.getSize());
+        copy.setCompressedSize(entry.getCompressedSize());
+        copy.setTime(entry.getTime());
+        enqueue(new RawEntry(source, entry, copy));
+        stats.read(entry.getCompressedSize());
+        copiedEntries += 1;
+    }
+
+    /**
+     * Add a new entry, stored or deflated according to its extension. Its
+     * parent directories are added if not already present.
+     */
+    void add(String name, Path file) throws IOException {
+        addParentDirs(name);
+        enqueue(isStored(name) ? new StoredEntry(name, file) : new DeflatedEntry(name, file));
+        stats.read(Files.size(file));
+        addedEntries += 1;
+    }
+
+    /**
+     * Add a file added to the repository. Entries of the maven repo patch are
+     * copied as is.
+     */
+    void add(String name, AddedFile file) throws IOException {
+        if (file.getFile() == null) {
+            copyRaw(file.getPatch().getArchive(), file.getPatch().getEntry(file.getEntryName()), name);
+        } else {
+            add(name, file.getFile());
+        }
+    }
+
+    /**
+     * Add all the files and directories located in a directory, sorted by
+     * name.
+     */
+    void addDirectoryContent(Path dir) throws IOException {
+        Map<String, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter((p) -> !p.equals(dir)).forEach((p) -> {
+                String name = AbstractMavenRepository.toEntryName(dir.relativize(p));
+                files.put(Files.isDirectory(p) ? name + "/" : name, p);
+            });
+        }
+        for (Map.Entry<String, Path> entry : files.entrySet()) {
+            if (entry.getKey().endsWith("/")) {
+                addDir(entry.getKey());
+            } else {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Add a directory entry, its parent directories are added if not already
+     * present.
+     */
+    void addDir(String name) throws IOException {
+        addParentDirs(name.endsWith("/") ? name : name + "/");
+    }
+
+    private void addParentDirs(String name) throws IOException {
+        int i = name.indexOf('/');
+        while (i >= 0) {
+            String dir = name.substring(0, i + 1);
+            if (!isCopiedDir(dir) && writtenDirs.add(dir)) {
+                enqueue(new DirEntry(dir));
+            }
+            i = name.indexOf('/', i + 1);
+        }
+    }
+
+    private void setAttributes(ZipArchiveEntry entry, Path file) throws IOException {
+        if (reproducible) {
+            entry.setTime(REPRODUCIBLE_TIME);
+            entry.setUnixMode(entry.isDirectory() ? UnixStat.DIR_FLAG | UnixStat.DEFAULT_DIR_PERM
+                    : UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM);
+        } else if (file != null) {
+            entry.setTime(Files.getLastModifiedTime(file).toMillis());
+        }
+    }
+
+    private void enqueue(PendingEntry entry) throws IOException {
+        pending.addLast(entry);
+        stats.entries(1);
+        submitChunks();
+        // Write what is ready without waiting, wait only when the chunks budget is spent.
+        while (!pending.isEmpty() && (pendingChunks >= maxPendingChunks || pending.peekFirst().isDone())) {
+            writeFirst();
+        }
+    }
+
+    /**
+     * Submit the next chunks of the pending entries, in the order they are
+     * written, while the budget allows it. The chunks of an entry are all
+     * submitted before the chunks of the next one.
+     */
+    private void submitChunks() {
+        for (PendingEntry entry : pending) {
+            if (pendingChunks >= maxPendingChunks) {
+                return;
+            }
+            pendingChunks += entry.submit(maxPendingChunks - pendingChunks);
+        }
+    }
+
+    /**
+     * The writer consumed a chunk, a worker can take the next one.
+     */
+    private void release() {
+        pendingChunks -= 1;
+        submitChunks();
+    }
+
+    private void writeFirst() throws IOException {
+        // Still pending while written, its next chunks are submitted first.
+        PendingEntry entry = pending.peekFirst();
+        try {
+            entry.write();
+        } finally {
+            pending.removeFirst();
+        }
+        if (sink != null && sink.getBytesWritten() - reportedBytes >= PROGRESS_STEP) {
+            reportedBytes = sink.getBytesWritten();
+            listener.outputProgress(reportedBytes);
+        }
+    }
+
+    long getCopiedEntries() {
+        return copiedEntries;
+    }
+
+    long getAddedEntries() {
+        return addedEntries;
+    }
+
+    /**
+     * Wait for all the entries to be written and print what has been copied,
+     * stored and deflated.
+     */
+    void printSummary() throws IOException {
+        flush();
+        listener.info("Copied " + copiedEntries + " entries, stored " + storedEntries + " new entries ("
+                + storedBytes + " bytes), deflated " + deflatedEntries + " new entries (" + deflatedBytes + " bytes to "
+                + deflatedCompressedBytes + " bytes, saved " + (deflatedBytes - deflatedCompressedBytes) + " bytes)");
+    }
+
+    private void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeFirst();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if (out != null) {
+                out.close();
+            } else {
+                boundedOut.close();
+            }
+            if (sink != null) {
+                stats.written(sink.getBytesWritten());
+                listener.outputProgress(sink.getBytesWritten());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void addRawArchiveEntry(ZipArchiveEntry entry, InputStream in) throws IOException {
+        if (out != null) {
+            out.addRawArchiveEntry(entry, in);
+        } else {
+            boundedOut.addRawArchiveEntry(entry, in);
+        }
+    }
+
+    private interface PendingEntry {
+
+        /**
+         * Submit the next chunks to the workers.
+         *
+         * @param max The maximum number of chunks to submit, at least 1.
+         * @return The number of submitted chunks.
+         */
+        int submit(int max);
+
+        /**
+         * @return true if all the chunks are submitted and done.
+         */
+        boolean isDone();
+
+        /**
+         * Write the entry, the writer releases each chunk once consumed. If
+         * a chunk is not submitted, the previous ones are released and
+         * submitting it can't be refused.
+         */
+        void write() throws IOException;
+    }
+
+    private final class DirEntry implements PendingEntry {
+
+        private final String name;
+
+        private DirEntry(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int submit(int max) {
+            return 0;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public void write() throws IOException {
+            ZipArchiveEntry entry = new ZipArchiveEntry(name);
+            setAttributes(entry, null);
+            if (out != null) {
+                out.putArchiveEntry(entry);
+                out.closeArchiveEntry();
+            } else {
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(0);
+                entry.setCompressedSize(0);
+                entry.setCrc(0);
+                boundedOut.addRawArchiveEntry(entry, new ByteArrayInputStream(new byte[0]));
+            }
+        }
+    }
+
+    private final class RawEntry implements PendingEntry {
+
+        private final ZipArchive source;
+        private final ZipArchiveEntry entry;
+        private final ZipArchiveEntry target;
+
+        private RawEntry(ZipArchive source, ZipArchiveEntry entry, ZipArchiveEntry target) {
+            this.source = source;
+            this.entry = entry;
+            this.target = target;
+        }
+
+        @Override
+        public int submit(int max) {
+            return 0;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public void write() throws IOException {
+            try (InputStream in = source.getRawInputStream(entry)) {
+                addRawArchiveEntry(target, in);
+            }
+        }
+    }
+
+    private final class StoredEntry implements PendingEntry {
+
+        private final ZipArchiveEntry entry;
+        private final Path file;
+        // Null if the CRC is computed while copying or if not submitted yet.
+        private Future<StoredContent> content;
+
+        private StoredEntry(String name, Path file) throws IOException {
+            this.file = file;
+            long size = Files.size(file);
+            entry = new ZipArchiveEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            setAttributes(entry, file);
+        }
+
+        private boolean isCrcCopied() {
+            return out != null && out.isSeekable();
+        }
+
+        @Override
+        public int submit(int max) {
+            if (isCrcCopied() || content != null) {
+                return 0;
+            }
+            content = executor.submit(() -> StoredContent.read(file, entry.getSize()));
+            return 1;
+        }
+
+        @Override
+        public boolean isDone() {
+            return isCrcCopied() || content != null && content.isDone();
+        }
+
+        @Override
+        public void write() throws IOException {
+            if (isCrcCopied()) {
+                // The CRC is unknown, the local header is rewritten once the entry is closed.
+                out.putArchiveEntry(entry);
+                Files.copy(file, out);
+                out.closeArchiveEntry();
+            } else {
+                if (content == null) {
+                    submitChunks();
+                }
+                StoredContent stored = get(content);
+                release();
+                entry.setCrc(stored.crc);
+                try (InputStream in = stored.bytes == null ? Files.newInputStream(file) : new ByteArrayInputStream(stored.bytes)) {
+                    addRawArchiveEntry(entry, in);
+                }
+            }
+            storedEntries += 1;
+            storedBytes += entry.getSize();
+        }
+    }
+
+    /**
+     * The CRC of a file to store, and its content if it fits in a chunk.
+     */
+    private static final class StoredContent {
+
+        private final long crc;
+        // Null if the file is larger than a chunk.
+        private final byte[] bytes;
+
+        private StoredContent(long crc, byte[] bytes) {
+            this.crc = crc;
+            this.bytes = bytes;
+        }
+
+        private static StoredContent read(Path file, long size) throws IOException {
+            if (size > CHUNK_SIZE) {
+                return new StoredContent(crc(file), null);
+            }
+            byte[] bytes = Files.readAllBytes(file);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            return new StoredContent(crc.getValue(), bytes);
+        }
+    }
+
+    private final class DeflatedEntry implements PendingEntry {
+
+        private final ZipArchiveEntry entry;
+        private final Path file;
+        private final int count;
+        private final List<Future<byte[]>> chunks = new ArrayList<>();
+        // Submitted with the first chunk.
+        private Future<Long> crc;
+
+        private DeflatedEntry(String name, Path file) throws IOException {
+            this.file = file;
+            long size = Files.size(file);
+            entry = new ZipArchiveEntry(name);
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setSize(size);
+            setAttributes(entry, file);
+            // An empty file is a single empty chunk.
+            count = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        }
+
+        @Override
+        public int submit(int max) {
+            if (crc == null) {
+                crc = executor.submit(() -> crc(file));
+            }
+            int submitted = Math.min(max, count - chunks.size());
+            for (int i = 0; i < submitted; i++) {
+                final long chunkOffset = (long) chunks.size() * CHUNK_SIZE;
+                final boolean last = chunks.size() == count - 1;
+                chunks.add(executor.submit(() -> deflate(file, chunkOffset, last, level)));
+            }
+            return submitted;
+        }
+
+        @Override
+        public boolean isDone() {
+            if (chunks.size() < count || !crc.isDone()) {
+                return false;
+            }
+            for (Future<byte[]> chunk : chunks) {
+                if (!chunk.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void write() throws IOException {
+            List<InputStream> streams = new ArrayList<>();
+            long compressedSize = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == chunks.size()) {
+                    submitChunks();
+                }
+                byte[] bytes = get(chunks.get(i));
+                // The compressed chunk is kept until the entry is written.
+                release();
+                compressedSize += bytes.length;
+                streams.add(new ByteArrayInputStream(bytes));
+            }
+            entry.setCrc(get(crc));
+            entry.setCompressedSize(compressedSize);
+            addRawArchiveEntry(entry, new SequenceInputStream(Collections.enumeration(streams)));
+            deflatedEntries += 1;
+            deflatedBytes += entry.getSize();
+            deflatedCompressedBytes += compressedSize;
+        }
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static byte[] deflate(Path file, long offset, boolean last, int level) throws IOException {
+        int dictionarySize = (int) Math.min(offset, DICTIONARY_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(dictionarySize + CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset - dictionarySize;
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n == -1) {
+                    break;
+                }
+                position += n;
+            }
+        }
+        byte[] input = buffer.array();
+        int length = buffer.position() - dictionarySize;
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionarySize > 0) {
+                deflater.setDictionary(input, 0, dictionarySize);
+            }
+            deflater.setInput(input, dictionarySize, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] output = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(output, 0, deflater.deflate(output));
+                }
+            } else {
+                // Sync flush until the deflater is drained, the chunk then ends on a byte boundary.
+                int n;
+                do {
+                    n = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                    compressed.write(output, 0, n);
+                } while (n == output.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
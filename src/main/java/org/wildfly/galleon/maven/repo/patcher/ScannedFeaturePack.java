@@ -16,12 +16,9 @@
  */
 package org.wildfly.galleon.maven.repo.patcher;
 
-import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
 /**
  *
@@ -29,51 +26,63 @@ import java.util.Set;
  */
 final class ScannedFeaturePack {
 
-    private final Set<Path> toRemove;
-    private final Map<String, String> versionProps;
-    private final Map<String, String> oldArtifacts;
+    private final PathTrie toRemove;
+    private final Map<String, ArtifactCoordinate> newArtifacts;
+    private final Map<String, ArtifactCoordinate> oldArtifacts;
 
-    private ScannedFeaturePack(Set<Path> toRemove, final Map<String, String> versionProps, Map<String, String> oldArtifacts) {
+    private ScannedFeaturePack(PathTrie toRemove, Map<String, ArtifactCoordinate> newArtifacts, Map<String, ArtifactCoordinate> oldArtifacts) {
         this.toRemove = toRemove;
-        this.versionProps = versionProps;
+        this.newArtifacts = newArtifacts;
         this.oldArtifacts = oldArtifacts;
     }
 
-    static ScannedFeaturePack scan(Path fpDir, Map<String, String> newArtifactsMap) throws Exception {
-        Set<Path> toRemove = new HashSet<>();
-        Path artifactProps = fpDir.resolve("resources").resolve("wildfly").resolve("artifact-versions.properties");
-        final Map<String, String> versionProps = ArtifactUtils.readProperties(artifactProps);
-        Map<String, String> oldArtifacts = new HashMap<>();
-        for (Entry<String, String> entry : newArtifactsMap.entrySet()) {
-            String origVersion = versionProps.get(entry.getKey());
+    /**
+     * @param versionProps The artifact versions of the feature-pack, at least
+     * the ones of the new artifacts.
+     */
+    static ScannedFeaturePack scan(Map<String, ArtifactCoordinate> versionProps, Map<String, ArtifactCoordinate> newArtifactsMap) throws Exception {
+        PathTrie toRemove = new PathTrie();
+        Map<String, ArtifactCoordinate> newArtifacts = new HashMap<>();
+        Map<String, ArtifactCoordinate> oldArtifacts = new HashMap<>();
+        for (Entry<String, ArtifactCoordinate> entry : newArtifactsMap.entrySet()) {
+            ArtifactCoordinate origVersion = versionProps.get(entry.getKey());
             if (origVersion != null) {
-                // replace with updated artifact
-                versionProps.put(entry.getKey(), entry.getValue());
-                toRemove.add(ArtifactUtils.convertToPath(origVersion));
+                newArtifacts.put(entry.getKey(), entry.getValue());
+                toRemove.add(origVersion.toPath());
                 oldArtifacts.put(entry.getKey(), origVersion);
             }
         }
-        return new ScannedFeaturePack(toRemove, versionProps, oldArtifacts);
+        return new ScannedFeaturePack(toRemove, newArtifacts, oldArtifacts);
     }
 
     /**
      * @return the toRemove
      */
-    public Set<Path> getToRemove() {
+    public PathTrie getToRemove() {
         return toRemove;
     }
 
     /**
-     * @return the versionProps
+     * @return A copy of the feature-pack artifact versions, the old artifacts
+     * replaced with the updated ones.
+     */
+    public Map<String, ArtifactCoordinate> getVersionProps(Map<String, ArtifactCoordinate> versionProps) {
+        Map<String, ArtifactCoordinate> patched = new HashMap<>(versionProps);
+        patched.putAll(newArtifacts);
+        return patched;
+    }
+
+    /**
+     * @return the newArtifacts
      */
-    public Map<String, String> getVersionProps() {
-        return versionProps;
+    public Map<String, ArtifactCoordinate> getNewArtifacts() {
+        return newArtifacts;
     }
 
     /**
      * @return the oldArtifacts
      */
-    public Map<String, String> getOldArtifacts() {
+    public Map<String, ArtifactCoordinate> getOldArtifacts() {
         return oldArtifacts;
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A concurrent pool of weakly referenced instances. An instance can be looked
+ * up from a region of a string that represents it, a pooled instance is then
+ * found without allocating anything. The pool is striped: each stripe is a
+ * hash table guarded by its own lock, so threads interning different values
+ * rarely contend. Instances no more referenced are collected and their
+ * entries removed on the next updates.
+ *
+ * @author jdenise
+ */
+abstract class WeakPool<T> {
+
+    private static final int STRIPES = 64;
+    private static final int STRIPE_BITS = 6;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe<T>[] stripes;
+
+    WeakPool() {
+        @SuppressWarnings("unchecked")
+        Stripe<T>[] array = (Stripe<T>[]) new Stripe<?>[STRIPES];
+        stripes = array;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * @return true if the value is the one represented by the region.
+     */
+    abstract boolean matches(T value, String str, int start, int end);
+
+    /**
+     * Create the value represented by the region, called when it is not
+     * pooled.
+     */
+    abstract T create(String str, int start, int end);
+
+    /**
+     * @param hash The hash code of the value represented by the region.
+     * @return The pooled value represented by the region.
+     */
+    final T intern(String str, int start, int end, int hash) {
+        Stripe<T> stripe = stripes[spread(hash) & (STRIPES - 1)];
+        synchronized (stripe) {
+            Node<T>[] table = stripe.table;
+            for (Node<T> node = table[index(hash, table.length)]; node != null; node = node.next) {
+                T value = node.hash == hash ? node.get() : null;
+                if (value != null && matches(value, str, start, end)) {
+                    return value;
+                }
+            }
+        }
+        // Created outside the lock, a concurrent thread can pool an equal value first.
+        return intern(create(str, start, end), hash);
+    }
+
+    /**
+     * @param hash The hash code of the value.
+     * @return The pooled value equal to the value, the value itself if none.
+     */
+    final T intern(T value, int hash) {
+        Stripe<T> stripe = stripes[spread(hash) & (STRIPES - 1)];
+        synchronized (stripe) {
+            stripe.expunge();
+            Node<T>[] table = stripe.table;
+            int index = index(hash, table.length);
+            for (Node<T> node = table[index]; node != null; node = node.next) {
+                T existing = node.hash == hash ? node.get() : null;
+                if (existing != null && existing.equals(value)) {
+                    return existing;
+                }
+            }
+            table[index] = new Node<>(value, hash, stripe.queue, table[index]);
+            stripe.size += 1;
+            if (stripe.size > table.length * 3 / 4) {
+                stripe.resize();
+            }
+            return value;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int index(int hash, int length) {
+        return (spread(hash) >>> STRIPE_BITS) & (length - 1);
+    }
+
+    private static final class Node<T> extends WeakReference<T> {
+
+        private final int hash;
+        private Node<T> next;
+
+        private Node(T value, int hash, ReferenceQueue<T> queue, Node<T> next) {
+            super(value, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final class Stripe<T> {
+
+        private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+        private Node<T>[] table = newTable(INITIAL_CAPACITY);
+        private int size;
+
+        /**
+         * Remove the entries of the collected values.
+         */
+        private void expunge() {
+            Reference<? extends T> ref;
+            while ((ref = queue.poll()) != null) {
+                Node<?> stale = (Node<?>) ref;
+                int index = index(stale.hash, table.length);
+                Node<T> previous = null;
+                for (Node<T> node = table[index]; node != null; previous = node, node = node.next) {
+                    if (node == stale) {
+                        if (previous == null) {
+                            table[index] = node.next;
+                        } else {
+                            previous.next = node.next;
+                        }
+                        size -= 1;
+                        break;
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newTable(int capacity) {
+            return (Node<T>[]) new Node<?>[capacity];
+        }
+
+        private void resize() {
+            Node<T>[] resized = newTable(table.length * 2);
+            for (Node<T> head : table) {
+                Node<T> node = head;
+                while (node != null) {
+                    Node<T> next = node.next;
+                    int index = index(node.hash, resized.length);
+                    node.next = resized[index];
+                    resized[index] = node;
+                    node = next;
+                }
+            }
+            table = resized;
+        }
+    }
+}
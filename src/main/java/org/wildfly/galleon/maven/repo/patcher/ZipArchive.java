@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.EntryStreamOffsets;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * A zip read with random access to its entries. Either a commons-compress
+ * {@link ZipFile}, that keeps all the entries in memory, or a
+ * {@link MappedZipArchive} that keeps them in memory-mapped files. Stored
+ * entries can be read with random access when the zip channel is known.
+ *
+ * @author jdenise
+ */
+abstract class ZipArchive implements Closeable {
+
+    static ZipArchive of(ZipFile zipFile) {
+        return of(zipFile, null);
+    }
+
+    /**
+     * @param channel The channel the zip file is read from, closed with the
+     * archive. Null if stored entries are not read with random access.
+     */
+    static ZipArchive of(ZipFile zipFile, SeekableByteChannel channel) {
+        return new ZipArchive() {
+            @Override
+            ZipArchiveEntry getEntry(String name) {
+                return zipFile.getEntry(name);
+            }
+
+            @Override
+            Enumeration<ZipArchiveEntry> getEntries() {
+                return zipFile.getEntries();
+            }
+
+            @Override
+            InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+                return zipFile.getInputStream(entry);
+            }
+
+            @Override
+            InputStream getRawInputStream(ZipArchiveEntry entry) throws IOException {
+                return zipFile.getRawInputStream(entry);
+            }
+
+            @Override
+            SeekableByteChannel getChannel() {
+                return channel;
+            }
+
+            @Override
+            long getDataOffset(ZipArchiveEntry entry) throws IOException {
+                // Resolved by the zip file when the entry is opened, nothing is read.
+                synchronized (zipFile) {
+                    if (entry.getDataOffset() == EntryStreamOffsets.OFFSET_UNKNOWN) {
+                        zipFile.getInputStream(entry).close();
+                    }
+                }
+                return entry.getDataOffset();
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    zipFile.close();
+                } finally {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The entry or null if not found.
+     */
+    abstract ZipArchiveEntry getEntry(String name);
+
+    /**
+     * @return The entries in the central directory order.
+     */
+    abstract Enumeration<ZipArchiveEntry> getEntries();
+
+    abstract InputStream getInputStream(ZipArchiveEntry entry) throws IOException;
+
+    /**
+     * @return The compressed bytes of the entry.
+     */
+    abstract InputStream getRawInputStream(ZipArchiveEntry entry) throws IOException;
+
+    /**
+     * @return The channel of the zip, null if the zip is not read with random
+     * access.
+     */
+    abstract SeekableByteChannel getChannel();
+
+    /**
+     * @return A seekable view of the content of a stored entry, null if the
+     * entry is compressed or the zip is not read with random access.
+     */
+    SeekableByteChannel newChannel(ZipArchiveEntry entry) throws IOException {
+        SeekableByteChannel channel = getChannel();
+        if (channel == null || entry.getMethod() != ZipEntry.STORED) {
+            return null;
+        }
+        return new EntryChannel(channel, getDataOffset(entry), entry.getSize());
+    }
+
+    /**
+     * @return The offset of the entry content in the zip.
+     */
+    long getDataOffset(ZipArchiveEntry entry) throws IOException {
+        return entry.getDataOffset();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * Where a generated zip is written: a file, a channel or a stream. Channels
+ * and streams are not closed by the patcher. A stream is written
+ * sequentially, entry sizes and CRCs then follow the entries data. The
+ * number of bytes written is tracked to report the progress.
+ *
+ * @author jdenise
+ */
+final class ZipSink {
+
+    private final Path file;
+    private final SeekableByteChannel channel;
+    private final OutputStream stream;
+    private volatile long bytesWritten;
+
+    private ZipSink(Path file, SeekableByteChannel channel, OutputStream stream) {
+        this.file = file;
+        this.channel = channel;
+        this.stream = stream;
+    }
+
+    static ZipSink of(Path file) {
+        return new ZipSink(file, null, null);
+    }
+
+    static ZipSink of(SeekableByteChannel channel) {
+        return new ZipSink(null, channel, null);
+    }
+
+    static ZipSink of(OutputStream stream) {
+        return new ZipSink(null, null, stream);
+    }
+
+    /**
+     * @return The size of the zip written by the last opened stream.
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    ZipArchiveOutputStream open() throws IOException {
+        bytesWritten = 0;
+        if (file != null) {
+            Files.deleteIfExists(file);
+            return new ZipArchiveOutputStream(new CountingChannel(Files.newByteChannel(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ), true));
+        }
+        if (channel != null) {
+            return new ZipArchiveOutputStream(new CountingChannel(channel, false));
+        }
+        return new ZipArchiveOutputStream(new CountingStream(stream, false));
+    }
+
+    /**
+     * @return A stream to write the zip sequentially.
+     */
+    OutputStream openStream() throws IOException {
+        bytesWritten = 0;
+        if (file != null) {
+            Files.deleteIfExists(file);
+            return new CountingStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), true);
+        }
+        if (channel != null) {
+            return new CountingStream(Channels.newOutputStream(new NonClosingChannel(channel)), false);
+        }
+        return new CountingStream(stream, false);
+    }
+
+    private final class CountingStream extends FilterOutputStream {
+
+        private final boolean owned;
+
+        private CountingStream(OutputStream out, boolean owned) {
+            super(out);
+            this.owned = owned;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWritten += 1;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            bytesWritten += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owned) {
+                out.close();
+            } else {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Local headers are rewritten once the entry is written, the size is the
+     * furthest position reached.
+     */
+    private final class CountingChannel extends NonClosingChannel {
+
+        private final boolean owned;
+
+        private CountingChannel(SeekableByteChannel channel, boolean owned) {
+            super(channel);
+            this.owned = owned;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = channel.write(src);
+            bytesWritten = Math.max(bytesWritten, channel.position());
+            return written;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owned) {
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (file != null) {
+            return file.toString();
+        }
+        return channel != null ? "channel " + channel : "stream " + stream;
+    }
+}
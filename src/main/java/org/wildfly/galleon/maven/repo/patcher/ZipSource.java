@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * A zip read by the patcher, a file or a channel. A channel is not closed by
+ * the patcher.
+ *
+ * @author jdenise
+ */
+final class ZipSource {
+
+    private final Path file;
+    private final SeekableByteChannel channel;
+
+    private ZipSource(Path file, SeekableByteChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    static ZipSource of(Path file) {
+        return new ZipSource(file, null);
+    }
+
+    static ZipSource of(SeekableByteChannel channel) {
+        return new ZipSource(null, channel);
+    }
+
+    /**
+     * @return The zip file, null if the zip is read from a channel.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    ZipFile open() throws IOException {
+        if (file != null) {
+            return new ZipFile(file.toFile());
+        }
+        return new ZipFile(new NonClosingChannel(channel));
+    }
+
+    /**
+     * @return The zip read from a channel returned by {@link #openChannel()},
+     * closing the zip closes the channel.
+     */
+    ZipFile open(SeekableByteChannel channel) throws IOException {
+        return new ZipFile(channel, toString(), "UTF8", true);
+    }
+
+    /**
+     * @return A file channel, or the channel that is not closed when the
+     * returned one is closed.
+     */
+    SeekableByteChannel openChannel() throws IOException {
+        if (file != null) {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        }
+        return new NonClosingChannel(channel);
+    }
+
+    @Override
+    public String toString() {
+        return file == null ? "channel " + channel : file.toString();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Map;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * A maven repository that is never extracted. The original zip is read entry
+ * by entry, changes are recorded in memory and the output zip is written in a
+ * single pass: deleted entries are skipped, replaced ones are substituted and
+ * new ones are appended. Unchanged entries are copied without recompression.
+ * <p>
+ * In bounded memory mode, the zip entries and the index are kept in
+ * memory-mapped files and the output zip central directory is spilled to
+ * disk, the heap doesn't grow with the number of entries.
+ *
+ * @author jdenise
+ */
+final class ZippedMavenRepository extends AbstractMavenRepository {
+
+    private final ZipArchive archive;
+    // Closes or releases the zip.
+    private final Closeable release;
+
+    private ZippedMavenRepository(ZipArchive archive, RepositoryIndex index, PatcherOptions options, Closeable release) {
+        super(index, options);
+        this.archive = archive;
+        this.release = release;
+    }
+
+    /**
+     * A repository backed by a shared zip, release is called instead of
+     * closing the zip.
+     */
+    static ZippedMavenRepository newInstance(ZipArchive archive, RepositoryIndex index, PatcherOptions options, Closeable release) {
+        return new ZippedMavenRepository(archive, index, options, release);
+    }
+
+    static ZippedMavenRepository newInstance(ZipSource originalMavenRepo, PatcherOptions options) throws Exception {
+        options.getListener().info("Reading maven repo " + originalMavenRepo);
+        if (options.isBoundedMemory()) {
+            MappedZipArchive archive = MappedZipArchive.open(originalMavenRepo, options.getWorkDir());
+            return new ZippedMavenRepository(archive, archive.getIndex(), options, archive);
+        }
+        // The zip channel is kept to read the stored entries with random access.
+        SeekableByteChannel channel = originalMavenRepo.openChannel();
+        try {
+            ZipFile zipFile = originalMavenRepo.open(channel);
+            ZipArchive archive = ZipArchive.of(zipFile, channel);
+            try {
+                return new ZippedMavenRepository(archive, RepositoryIndex.get(zipFile, originalMavenRepo, options), options, archive);
+            } catch (Exception ex) {
+                archive.close();
+                throw ex;
+            }
+        } catch (Exception ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public InputStream newInputStream(Path file) throws IOException {
+        String name = toEntryName(file);
+        AddedFile source = getAdded().get(name);
+        if (source != null) {
+            return options.getIoStats().count(source.newInputStream());
+        }
+        ZipArchiveEntry entry = archive.getEntry(index.getRootPrefix() + name);
+        if (entry == null) {
+            throw new IOException(file + " doesn't exist in the maven repository");
+        }
+        return options.getIoStats().count(archive.getInputStream(entry));
+    }
+
+    @Override
+    public SeekableByteChannel newChannel(Path file) throws IOException {
+        String name = toEntryName(file);
+        if (getAdded().containsKey(name)) {
+            return null;
+        }
+        ZipArchiveEntry entry = archive.getEntry(index.getRootPrefix() + name);
+        if (entry == null) {
+            throw new IOException(file + " doesn't exist in the maven repository");
+        }
+        SeekableByteChannel channel = archive.newChannel(entry);
+        return channel == null ? null : options.getIoStats().count(channel);
+    }
+
+    @Override
+    public void save(ZipSink output) throws IOException {
+        options.getListener().info("Streaming maven repo to " + output);
+        try (RepositoryZipWriter writer = new RepositoryZipWriter(output, options)) {
+            if (options.isBoundedMemory()) {
+                // All the unchanged directories are copied first, no need to record them.
+                writer.setCopiedDirs((dir) -> index.find(dir) >= 0 && !isChanged(dir));
+            }
+            Enumeration<ZipArchiveEntry> entries = archive.getEntries();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                if (!isChanged(entry.getName())) {
+                    writer.copyRaw(archive, entry);
+                }
+            }
+            for (Map.Entry<String, AddedFile> entry : getAdded().entrySet()) {
+                writer.add(index.getRootPrefix() + entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, AddedFile> entry : getAddedInParent().entrySet()) {
+                writer.add(index.getParentPrefix() + entry.getKey(), entry.getValue());
+            }
+            writer.printSummary();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        release.close();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event for each phase of a patcher run. Compiled for Java 11 apart
+ * from the Java 8 sources and only loaded when JFR is available (see
+ * {@link PhaseRecorder}), events are typed as Object outside of this class.
+ *
+ * @author jdenise
+ */
+@Name("org.wildfly.galleon.maven.repo.patcher.Phase")
+@Label("Patcher Phase")
+@Category("Galleon Maven Repo Patcher")
+@Description("A phase of a maven repo patcher run")
+@StackTrace(false)
+final class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("CPU Time")
+    @Description("CPU time of the run threads")
+    @Timespan
+    long cpuTime;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Entries")
+    long entries;
+
+    @Label("Peak Heap")
+    @Description("Peak of the used heap, -1 if other runs were executed during the phase")
+    @DataAmount
+    long peakHeap;
+
+    /**
+     * Instantiated by {@link PhaseRecorder}.
+     */
+    static final class Sink implements PhaseRecorder.EventSink {
+
+        @Override
+        public Object begin(PatcherListener.Phase phase) {
+            PhaseEvent event = new PhaseEvent();
+            event.phase = phase.name();
+            event.begin();
+            return event;
+        }
+
+        @Override
+        public void commit(Object started, PhaseMetrics metrics) {
+            PhaseEvent event = (PhaseEvent) started;
+            if (event.shouldCommit()) {
+                event.cpuTime = metrics.getCpuTimeNanos();
+                event.bytesRead = metrics.getBytesRead();
+                event.bytesWritten = metrics.getBytesWritten();
+                event.entries = metrics.getEntries();
+                event.peakHeap = metrics.getPeakHeapBytes();
+                event.commit();
+            }
+        }
+    }
+}
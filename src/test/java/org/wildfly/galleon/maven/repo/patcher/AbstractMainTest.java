@@ -19,6 +19,8 @@ package org.wildfly.galleon.maven.repo.patcher;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.jboss.galleon.util.IoUtils;
 import org.jboss.galleon.util.ZipUtils;
@@ -46,19 +48,34 @@ abstract class AbstractMainTest {
             ZipUtils.zip(patchedRoot.getParent().getParent(), zippedPatchedRepo);
             Path output = Files.createTempFile("maven-repo-test", ".zip");
             output.toFile().deleteOnExit();
-            String[] args = {zippedRepo.toAbsolutePath().toString(), zippedPatchedRepo.toAbsolutePath().toString(), output.toAbsolutePath().toString()};
-            Main.main(args);
+            generate(zippedRepo, zippedPatchedRepo, output);
             Assert.assertTrue(Files.exists(output));
             ZipUtils.unzip(output, outputDirectory);
             done(outputDirectory.resolve("builder-image"));
 
         } finally {
             IoUtils.recursiveDelete(wkDir);
-            IoUtils.recursiveDelete(Paths.get(Patcher.WORK_DIR));
+            IoUtils.recursiveDelete(Paths.get(Main.WORK_DIR));
             System.clearProperty(Patcher.FP_PATHS);
         }
     }
 
+    protected String[] getOptions() {
+        return new String[0];
+    }
+
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        runMain(getOptions(), zippedRepo, zippedPatchedRepo, output);
+    }
+
+    static void runMain(String[] options, Path first, Path second, Path output) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList(options));
+        args.add(first.toAbsolutePath().toString());
+        args.add(second.toAbsolutePath().toString());
+        args.add(output.toAbsolutePath().toString());
+        Main.main(args.toArray(new String[0]));
+    }
+
     protected abstract List<Artifact> setup(Path root, Path patchedRoot) throws Exception;
 
     protected abstract void done(Path outputRepo) throws Exception;
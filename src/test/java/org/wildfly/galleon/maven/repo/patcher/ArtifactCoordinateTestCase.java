@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class ArtifactCoordinateTestCase {
+
+    @Test
+    public void test() throws Exception {
+        ArtifactCoordinate jar = ArtifactCoordinate.parse("org.foo.bar:art1:1.0::jar");
+        Assert.assertEquals("org.foo.bar", jar.getGroupId());
+        Assert.assertEquals("art1", jar.getArtifactId());
+        Assert.assertEquals("1.0", jar.getVersion());
+        Assert.assertEquals("", jar.getClassifier());
+        Assert.assertEquals("jar", jar.getExtension());
+        Assert.assertEquals("org.foo.bar:art1", jar.getKey());
+        Assert.assertEquals("org.foo.bar:art1:1.0::jar", jar.toString());
+        Assert.assertEquals(Paths.get("org/foo/bar/art1/1.0/art1-1.0.jar"), jar.toPath());
+        Assert.assertEquals(jar.toPath(), ArtifactUtils.convertToPath(jar.toString()));
+        Assert.assertEquals(jar, ArtifactCoordinate.fromPath(jar.toPath()));
+
+        String line = "org.foo.bar:art1::linux-x86_64=org.foo.bar:art1:1.0:linux-x86_64:so";
+        ArtifactCoordinate lib = ArtifactCoordinate.parse(line, line.indexOf('=') + 1, line.length());
+        Assert.assertEquals("org.foo.bar:art1::linux-x86_64", lib.getKey());
+        Assert.assertEquals(Paths.get("org/foo/bar/art1/1.0/art1-1.0-linux-x86_64.so"), lib.toPath());
+        Assert.assertEquals(lib.toPath(), ArtifactUtils.convertToPath(lib.toString()));
+        Assert.assertEquals(lib, ArtifactCoordinate.fromPath(lib.toPath()));
+
+        // Interned, as are their parts.
+        Assert.assertSame(jar, ArtifactCoordinate.parse(new String("org.foo.bar:art1:1.0::jar")));
+        Assert.assertSame(jar.getGroupId(), lib.getGroupId());
+        Assert.assertSame(jar.getArtifactId(), lib.getArtifactId());
+        Assert.assertNotEquals(jar, lib);
+        Assert.assertSame(jar, ArtifactCoordinate.parse("x=org.foo.bar:art1:1.0::jar#", 2, 27));
+        Assert.assertSame(jar, ArtifactCoordinate.of("org.foo.bar", "art1", "1.0", "", "jar"));
+        Assert.assertSame(ArtifactCoordinate.intern(jar.getKey()), ArtifactCoordinate.intern(line, 0, line.indexOf(':', 12)));
+
+        // Threads interning the same coordinates get the same instances.
+        ExecutorService executor = ParallelUtils.newExecutor(4, "intern");
+        try {
+            List<Callable<List<ArtifactCoordinate>>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                tasks.add(() -> {
+                    List<ArtifactCoordinate> coordinates = new ArrayList<>();
+                    for (int i = 0; i < 10000; i++) {
+                        coordinates.add(ArtifactCoordinate.parse("org.foo" + i % 100 + ":art" + i + ":1.0::jar"));
+                    }
+                    return coordinates;
+                });
+            }
+            List<List<ArtifactCoordinate>> results = ParallelUtils.invokeAll(executor, tasks);
+            for (int i = 0; i < 10000; i++) {
+                for (List<ArtifactCoordinate> coordinates : results) {
+                    Assert.assertSame(results.get(0).get(i), coordinates.get(i));
+                }
+                Assert.assertSame(results.get(0).get(i).getGroupId(), results.get(0).get(i % 100).getGroupId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (String invalid : new String[]{"org.foo.bar:art1:1.0", "org.foo.bar:art1:1.0::jar:foo"}) {
+            try {
+                ArtifactCoordinate.parse(invalid);
+                Assert.fail(invalid);
+            } catch (IllegalArgumentException ex) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class ArtifactIndexTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Map<String, ArtifactCoordinate> fp1 = new HashMap<>();
+        fp1.put("org.foo.bar:art1", ArtifactCoordinate.parse("org.foo.bar:art1:1.0::jar"));
+        fp1.put("org.foo.bar:art2", ArtifactCoordinate.parse("org.foo.bar:art2:2.0::jar"));
+        Map<String, ArtifactCoordinate> fp2 = new HashMap<>();
+        fp2.put("org.foo.bar:art2", ArtifactCoordinate.parse("org.foo.bar:art2:2.0::jar"));
+        fp2.put("org.foo.bar:art3::lib", ArtifactCoordinate.parse("org.foo.bar:art3:3.0:lib:so"));
+
+        ArtifactIndex index = new ArtifactIndex();
+        index.add(0, fp1);
+        index.add(1, fp2);
+
+        List<ArtifactIndex.Reference> refs = index.get("org.foo.bar:art2");
+        Assert.assertEquals(2, refs.size());
+        Assert.assertEquals(0, refs.get(0).getFeaturePack());
+        Assert.assertEquals(1, refs.get(1).getFeaturePack());
+        Assert.assertTrue(index.get("org.foo.bar:art4").isEmpty());
+
+        Map<String, ArtifactCoordinate> patched = new HashMap<>();
+        patched.put("org.foo.bar:art2", ArtifactCoordinate.parse("org.foo.bar:art2:2.1::jar"));
+        patched.put("org.foo.bar:art3::lib", ArtifactCoordinate.parse("org.foo.bar:art3:3.1:lib:so"));
+        patched.put("org.foo.bar:art4", ArtifactCoordinate.parse("org.foo.bar:art4:4.1::jar"));
+        List<Map<String, ArtifactCoordinate>> claimed = index.claim(patched, 2);
+        // All the feature-packs referencing an artifact claim it.
+        Assert.assertEquals(1, claimed.get(0).size());
+        Assert.assertEquals(ArtifactCoordinate.parse("org.foo.bar:art2:2.1::jar"), claimed.get(0).get("org.foo.bar:art2"));
+        Assert.assertEquals(2, claimed.get(1).size());
+        Assert.assertEquals(ArtifactCoordinate.parse("org.foo.bar:art2:2.1::jar"), claimed.get(1).get("org.foo.bar:art2"));
+        Assert.assertEquals(ArtifactCoordinate.parse("org.foo.bar:art3:3.1:lib:so"), claimed.get(1).get("org.foo.bar:art3::lib"));
+    }
+}
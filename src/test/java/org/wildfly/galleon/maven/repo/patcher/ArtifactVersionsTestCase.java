@@ -16,8 +16,11 @@
  */
 package org.wildfly.galleon.maven.repo.patcher;
 
+import java.io.BufferedReader;
+import java.io.StringReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -58,5 +61,13 @@ public class ArtifactVersionsTestCase {
             String[] entry = ArtifactUtils.pathToArtifactVersion(p);
             Assert.assertEquals("org.foo.bar:art1=org.foo.bar:art1:1.0::foo", entry[0] + "=" + entry[1]);
         }
+
+        {
+            // Comments and blank lines are ignored.
+            String content = "# versions\n\norg.foo.bar:art1=org.foo.bar:art1:1.0::jar\n  \n";
+            Map<String, String> props = ArtifactUtils.readProperties(new BufferedReader(new StringReader(content)), "test");
+            Assert.assertEquals(1, props.size());
+            Assert.assertEquals("org.foo.bar:art1:1.0::jar", props.get("org.foo.bar:art1"));
+        }
     }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+
+/**
+ * Same checks as MainTestCase, the generated repo being produced by a batch
+ * of 2 concurrent jobs that share the same maven repo patch. Jobs that
+ * generate the same file are rejected.
+ *
+ * @author jdenise
+ */
+public class BatchTestCase extends MainTestCase {
+
+    @Override
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        Path dir = zippedRepo.getParent();
+        Path manifest = dir.resolve("jobs.txt");
+        String duplicates = zippedRepo.getFileName() + " " + zippedPatchedRepo.getFileName() + " second-output.zip\n"
+                + zippedRepo.getFileName() + " " + zippedPatchedRepo.getFileName() + " ./second-output.zip\n";
+        Files.write(manifest, duplicates.getBytes(StandardCharsets.UTF_8));
+        try {
+            Main.main(new String[]{Main.JOBS + "2", Main.BATCH + manifest.toAbsolutePath()});
+            Assert.fail("Jobs generating the same file must be rejected");
+        } catch (Exception ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("line 2"));
+        }
+        Assert.assertFalse(Files.exists(dir.resolve("second-output.zip")));
+
+        String content = "# base repo, patch, output\n"
+                + zippedRepo.getFileName() + " " + zippedPatchedRepo.getFileName() + " " + output.toAbsolutePath() + "\n"
+                + "\n"
+                + zippedRepo.getFileName() + "  " + zippedPatchedRepo.getFileName() + "  second-output.zip\n";
+        Files.write(manifest, content.getBytes(StandardCharsets.UTF_8));
+        String[] args = {Main.REPRODUCIBLE, Main.JOBS + "2", Main.BATCH + manifest.toAbsolutePath()};
+        Main.main(args);
+        Assert.assertArrayEquals(Files.readAllBytes(output), Files.readAllBytes(dir.resolve("second-output.zip")));
+    }
+}
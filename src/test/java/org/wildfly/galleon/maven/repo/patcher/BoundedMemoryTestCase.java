@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+import org.jboss.galleon.util.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Patch a generated repository in bounded memory mode, the inputs being read
+ * from channels. The generated repository is the one generated in streaming
+ * mode, entry by entry, and the artifacts are reported to the listener.
+ *
+ * @author jdenise
+ */
+public class BoundedMemoryTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("bounded-memory");
+        try {
+            Path repo = dir.resolve("repository.zip");
+            Path patch = dir.resolve("patch.zip");
+            Path expected = dir.resolve("expected.zip");
+            Path output = dir.resolve("output.zip");
+            RepositoryGenerator generator = new RepositoryGenerator().
+                    setArtifacts(500).
+                    setGroups(20).
+                    setFeaturePacks(3).
+                    setPatchSize(40).
+                    setJarSize(1024);
+            generator.generate(repo, patch);
+
+            PatchResult streamed = Patcher.builder().
+                    setOriginalRepository(repo).
+                    setRepositoryPatch(patch).
+                    setOutput(expected).
+                    setStreaming(true).
+                    setReproducible(true).
+                    setWorkDir(dir.resolve("work")).
+                    build().patch();
+            Assert.assertFalse(streamed.isReportedDuringRun());
+
+            List<String> messages = Collections.synchronizedList(new ArrayList<>());
+            PatchResult result;
+            try (SeekableByteChannel repoChannel = Files.newByteChannel(repo);
+                    SeekableByteChannel patchChannel = Files.newByteChannel(patch)) {
+                result = Patcher.builder().
+                        setOriginalRepository(repoChannel).
+                        setRepositoryPatch(patchChannel).
+                        setOutput(output).
+                        setBoundedMemory(true).
+                        setReproducible(true).
+                        setListener(new PatcherListener() {
+                            @Override
+                            public void info(String message) {
+                                messages.add(message);
+                            }
+                        }).
+                        setWorkDir(dir.resolve("work")).
+                        build().patch();
+            }
+            Assert.assertTrue(result.isReportedDuringRun());
+            Assert.assertEquals(streamed.getPatchesXml(), result.getPatchesXml());
+            Assert.assertEquals(streamed.getPatches().size(), result.getPatches().size());
+            Assert.assertTrue(result.getDeletedDirectories().isEmpty());
+            for (PatchResult.CreatedPatch created : streamed.getPatches()) {
+                for (Map.Entry<String, String> entry : created.getPatchedArtifacts().entrySet()) {
+                    Assert.assertTrue(entry.getKey(), messages.contains("Patched artifact " + entry.getKey() + " => " + entry.getValue()));
+                }
+            }
+            for (String deleted : streamed.getDeletedDirectories()) {
+                Assert.assertTrue(deleted, messages.contains("Deleted " + deleted + "/*"));
+            }
+
+            try (ZipFile expectedZip = new ZipFile(expected.toFile());
+                    ZipFile outputZip = new ZipFile(output.toFile())) {
+                Enumeration<ZipArchiveEntry> expectedEntries = expectedZip.getEntries();
+                Enumeration<ZipArchiveEntry> outputEntries = outputZip.getEntries();
+                while (expectedEntries.hasMoreElements()) {
+                    ZipArchiveEntry expectedEntry = expectedEntries.nextElement();
+                    Assert.assertTrue(expectedEntry.getName(), outputEntries.hasMoreElements());
+                    ZipArchiveEntry entry = outputEntries.nextElement();
+                    Assert.assertEquals(expectedEntry.getName(), entry.getName());
+                    Assert.assertEquals(entry.getName(), expectedEntry.getCrc(), entry.getCrc());
+                    Assert.assertEquals(entry.getName(), expectedEntry.getSize(), entry.getSize());
+                    Assert.assertEquals(entry.getName(), expectedEntry.getTime(), entry.getTime());
+                    Assert.assertEquals(entry.getName(), expectedEntry.getUnixMode(), entry.getUnixMode());
+                    try (InputStream expectedIn = expectedZip.getInputStream(expectedEntry);
+                            InputStream in = outputZip.getInputStream(entry)) {
+                        Assert.assertArrayEquals(entry.getName(), IOUtils.toByteArray(expectedIn), IOUtils.toByteArray(in));
+                    }
+                }
+                Assert.assertFalse(outputEntries.hasMoreElements());
+            }
+        } finally {
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Assert;
+
+/**
+ * Same checks as MainTestCase, the maven repo patch artifacts have valid
+ * checksum files and the generated patches must come with their checksum
+ * files.
+ *
+ * @author jdenise
+ */
+public class ChecksumsMainTestCase extends MainTestCase {
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        List<Artifact> artifacts = super.setup(root, patchedRoot);
+        for (Artifact a : artifacts) {
+            if (a instanceof PatchedArtifact) {
+                Path patched = patchedRoot.resolve(((PatchedArtifact) a).getPatched());
+                Checksums checksums;
+                try (InputStream in = Files.newInputStream(patched)) {
+                    checksums = Checksums.compute(in);
+                }
+                writeChecksums(patched, checksums.getSha1() + "  " + patched.getFileName(), checksums.getMd5());
+            }
+        }
+        return artifacts;
+    }
+
+    static void writeChecksums(Path file, String sha1, String md5) throws Exception {
+        Files.write(file.resolveSibling(file.getFileName() + Checksums.SHA1), sha1.getBytes(StandardCharsets.US_ASCII));
+        Files.write(file.resolveSibling(file.getFileName() + Checksums.MD5), md5.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    protected void done(Path outputRepo) throws Exception {
+        super.done(outputRepo);
+        Checksums abc = Checksums.compute(new ByteArrayInputStream("abc".getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", abc.getSha1());
+        Assert.assertEquals("900150983cd24fb0d6963f7d28e17f72", abc.getMd5());
+
+        Path mavenRepo = outputRepo.resolve("maven-repository");
+        String[] producers = {producer1, producer2, producer3};
+        for (String producer : producers) {
+            Path fpPath = mavenRepo.resolve(ArtifactUtils.convertToPath("org.foo.bar:" + producer + ":" + expectedFpversion + "::zip"));
+            Checksums checksums;
+            try (InputStream in = Files.newInputStream(fpPath)) {
+                checksums = Checksums.compute(in);
+            }
+            try (InputStream in = Files.newInputStream(fpPath.resolveSibling(fpPath.getFileName() + Checksums.SHA1))) {
+                Assert.assertEquals(checksums.getSha1(), Checksums.readSha1(in));
+            }
+            try (InputStream in = Files.newInputStream(fpPath.resolveSibling(fpPath.getFileName() + Checksums.MD5))) {
+                Assert.assertEquals(checksums.getMd5(), Checksums.readMd5(in));
+            }
+        }
+    }
+}
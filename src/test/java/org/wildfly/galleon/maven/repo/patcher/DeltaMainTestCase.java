@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.Assert;
+
+/**
+ * Same checks as MainTestCase, the generated repo being rebuilt from the
+ * original repo and a delta.
+ *
+ * @author jdenise
+ */
+public class DeltaMainTestCase extends MainTestCase {
+
+    @Override
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        Path delta = Files.createTempFile("maven-repo-delta", ".zip");
+        try {
+            String[] options = {Main.DELTA};
+            runMain(options, zippedRepo, zippedPatchedRepo, delta);
+            try (ZipFile zipFile = new ZipFile(delta.toFile())) {
+                Assert.assertNotNull(zipFile.getEntry(RepositoryDelta.DELETED_ENTRIES));
+                Assert.assertNull(zipFile.getEntry("builder-image/maven-repository/org/foo/bar/no/patch/art1/1.0/art1-1.0.jar"));
+                Assert.assertNotNull(zipFile.getEntry("builder-image/" + GalleonPatchUtils.PATCHES_FILE));
+            }
+            String[] applyOptions = {Main.APPLY_DELTA};
+            runMain(applyOptions, zippedRepo, delta, output);
+        } finally {
+            Files.deleteIfExists(delta);
+        }
+    }
+}
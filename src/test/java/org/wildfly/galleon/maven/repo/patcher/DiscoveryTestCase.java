@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Same checks as MainTestCase, the feature-packs being discovered. A
+ * community feature-pack, without a -redhat- qualifier, is patched too.
+ *
+ * @author jdenise
+ */
+public class DiscoveryTestCase extends MainTestCase {
+
+    final String communityProducer = "fp-community";
+    final String communityVersion = "26.0.0.Final";
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        List<Artifact> artifacts = super.setup(root, patchedRoot);
+        System.clearProperty(Patcher.FP_PATHS);
+        // A zip that is not a galleon feature-pack.
+        TestUtils.createArtifact(root, "org.foo.bar.no.patch", "dist", "1.0", null, "zip");
+        // References an artifact patched in the other feature-packs.
+        TestUtils.buildFP(root, communityProducer, communityVersion, Collections.singletonList(artifacts.get(artifacts.size() - 1)));
+        return artifacts;
+    }
+
+    @Override
+    protected Set<String> getExpectedPatches() {
+        Set<String> ids = super.getExpectedPatches();
+        ids.add("org.foo.bar:" + communityProducer + ":" + communityVersion + Patcher.PATCH_MARKER);
+        return ids;
+    }
+}
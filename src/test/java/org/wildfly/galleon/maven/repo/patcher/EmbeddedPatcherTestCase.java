@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Run the patcher through its API: repository read from a channel, output
+ * written to a stream, events recorded by a listener.
+ *
+ * @author jdenise
+ */
+public class EmbeddedPatcherTestCase extends AbstractMainTest {
+
+    final String producer1 = "fp-prod1";
+    final String fpVersion = "1.0-redhat-00001";
+    final String expectedFpversion = "1.0" + Patcher.PATCH_MARKER + "-redhat-00001";
+    final List<Artifact> lst = new ArrayList<>();
+    PatchedArtifact patched;
+    private static final String WORK_DIR_MESSAGE = "Tool work dir: ";
+
+    private static final class RecordingListener implements PatcherListener {
+
+        private final List<Phase> started = new ArrayList<>();
+        private final List<Phase> completed = new ArrayList<>();
+        private long bytesWritten;
+        private final List<Path> workDirs = new ArrayList<>();
+
+        @Override
+        public synchronized void phaseStarted(Phase phase) {
+            started.add(phase);
+        }
+
+        @Override
+        public synchronized void phaseCompleted(Phase phase, long durationMillis) {
+            Assert.assertTrue(durationMillis >= 0);
+            completed.add(phase);
+        }
+
+        @Override
+        public synchronized void outputProgress(long bytesWritten) {
+            Assert.assertTrue(bytesWritten >= this.bytesWritten);
+            this.bytesWritten = bytesWritten;
+        }
+
+        @Override
+        public synchronized void info(String message) {
+            if (message.startsWith(WORK_DIR_MESSAGE)) {
+                workDirs.add(Paths.get(message.substring(WORK_DIR_MESSAGE.length())));
+            }
+        }
+    }
+
+    @Test
+    public void test() throws Exception {
+        runTest();
+    }
+
+    @Override
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        RecordingListener listener = new RecordingListener();
+        PatchResult result;
+        try (SeekableByteChannel repo = Files.newByteChannel(zippedRepo);
+                OutputStream out = Files.newOutputStream(output)) {
+            result = Patcher.builder().
+                    setOriginalRepository(repo).
+                    setRepositoryPatch(zippedPatchedRepo).
+                    setOutput(out).
+                    setListener(listener).
+                    setStreaming(true).
+                    setThreads(2).
+                    build().patch();
+            // Caller channels and streams are not closed.
+            Assert.assertTrue(repo.isOpen());
+            out.flush();
+        }
+        Assert.assertEquals(Arrays.asList(PatcherListener.Phase.values()), listener.started);
+        Assert.assertEquals(listener.started, listener.completed);
+        Assert.assertEquals(Files.size(output), listener.bytesWritten);
+
+        Assert.assertEquals(1, result.getPatches().size());
+        PatchResult.CreatedPatch patch = result.getPatches().get(0);
+        Assert.assertEquals("org.foo.bar:" + producer1 + ":" + expectedFpversion, patch.getId());
+        Assert.assertEquals(producer1 + "-" + fpVersion + ".zip", patch.getFeaturePack());
+        Assert.assertEquals(1, patch.getPatchedArtifacts().size());
+        Assert.assertEquals(Arrays.asList(AbstractMavenRepository.toEntryName(patched.getPatched())),
+                result.getAddedArtifacts());
+        Assert.assertEquals(Arrays.asList(AbstractMavenRepository.toEntryName(patched.getPath().getParent())),
+                result.getDeletedDirectories());
+        Assert.assertTrue(result.getSkippedArtifacts().isEmpty());
+        Assert.assertTrue(result.getPatchesXml().contains(patch.getId()));
+
+        // Patchers without a work dir run concurrently, each in its own temporary directory.
+        Path otherOutput = output.resolveSibling(output.getFileName() + "-other.zip");
+        RecordingListener otherListener = new RecordingListener();
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                List<Future<PatchResult>> runs = new ArrayList<>();
+                for (RecordingListener l : Arrays.asList(listener, otherListener)) {
+                    Path out = l == listener ? output : otherOutput;
+                    runs.add(executor.submit(() -> Patcher.builder().
+                            setOriginalRepository(zippedRepo).
+                            setRepositoryPatch(zippedPatchedRepo).
+                            setOutput(out).
+                            setListener(l).
+                            build().patch()));
+                }
+                for (Future<PatchResult> run : runs) {
+                    Assert.assertEquals(patch.getId(), run.get().getPatches().get(0).getId());
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            Assert.assertEquals(2, listener.workDirs.size());
+            Assert.assertEquals(1, otherListener.workDirs.size());
+            Assert.assertNotEquals(listener.workDirs.get(1), otherListener.workDirs.get(0));
+            for (Path workDir : Arrays.asList(listener.workDirs.get(0), listener.workDirs.get(1), otherListener.workDirs.get(0))) {
+                Assert.assertFalse(workDir.toString(), Files.exists(workDir));
+            }
+            Assert.assertFalse(Files.exists(Paths.get(Main.WORK_DIR)));
+            Assert.assertEquals(Files.size(output), Files.size(otherOutput));
+        } finally {
+            Files.deleteIfExists(otherOutput);
+        }
+    }
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        patched = TestUtils.createPatchedArtifact(root, patchedRoot, "org.foo.bar", "art1", "1.0", null, "jar");
+        lst.add(patched);
+        TestUtils.buildFP(root, producer1, fpVersion, lst);
+        System.setProperty(Patcher.FP_PATHS, "org/foo/bar/" + producer1);
+        return lst;
+    }
+
+    @Override
+    protected void done(Path outputRepo) throws Exception {
+        Set<String> ids = new HashSet<>();
+        ids.add("org.foo.bar:" + producer1 + ":" + expectedFpversion);
+        TestUtils.checkPatches(outputRepo.resolve("patches.xml"), ids);
+        Path mavenRepo = outputRepo.resolve("maven-repository");
+        Assert.assertFalse(Files.exists(mavenRepo.resolve(patched.getPath())));
+        Assert.assertTrue(Files.exists(mavenRepo.resolve(patched.getPatched())));
+    }
+}
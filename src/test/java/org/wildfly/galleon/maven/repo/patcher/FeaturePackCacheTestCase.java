@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.jboss.galleon.universe.FeaturePackLocation;
+import org.jboss.galleon.universe.FeaturePackLocation.FPID;
+import org.jboss.galleon.util.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class FeaturePackCacheTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("fp-cache");
+        try {
+            FeaturePackCache cache = new FeaturePackCache(dir, ConsoleListener.INSTANCE);
+            String sha1 = "0123456789abcdef0123456789abcdef01234567";
+            Assert.assertNull(cache.get(sha1));
+
+            FPID producer = FeaturePackLocation.fromString("fp-prod1@maven(org.jboss.universe.community-universe):current#1.0-redhat-00001").getFPID();
+            Map<String, ArtifactCoordinate> versionProps = new HashMap<>();
+            versionProps.put("org.foo.bar:art1", ArtifactCoordinate.parse("org.foo.bar:art1:1.0::jar"));
+            versionProps.put("org.foo.bar:art2::lib", ArtifactCoordinate.parse("org.foo.bar:art2:2.0:lib:so"));
+            cache.put(sha1, new FeaturePackMetadata(producer, false, versionProps));
+
+            FeaturePackMetadata cached = new FeaturePackCache(dir, ConsoleListener.INSTANCE).get(sha1);
+            Assert.assertNotNull(cached);
+            Assert.assertEquals(producer, cached.getProducer());
+            Assert.assertFalse(cached.isPatch());
+            Assert.assertEquals(versionProps, cached.getVersionProps());
+
+            // A zip that is not a feature-pack is remembered across caches.
+            String notFpSha1 = "76543210fedcba9876543210fedcba9876543210";
+            cache.put(notFpSha1, FeaturePackCache.NOT_A_FEATURE_PACK);
+            Assert.assertSame(FeaturePackCache.NOT_A_FEATURE_PACK, new FeaturePackCache(dir, ConsoleListener.INSTANCE).get(notFpSha1));
+
+            Assert.assertEquals(sha1, Checksums.parseSha1(sha1.toUpperCase() + "  fp-prod1-1.0-redhat-00001.zip\n"));
+            Assert.assertNull(Checksums.parseSha1("not a sha1"));
+        } finally {
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+}
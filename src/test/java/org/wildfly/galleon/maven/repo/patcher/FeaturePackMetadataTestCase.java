@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jboss.galleon.util.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A feature-pack stored in a zip is read through its central directory,
+ * a compressed one is read as a stream.
+ *
+ * @author jdenise
+ */
+public class FeaturePackMetadataTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("fp-metadata");
+        try {
+            Path root = dir.resolve("repo");
+            Artifact art = TestUtils.createArtifact(root, "org.foo.bar", "art1", "1.0", null, "jar");
+            TestUtils.buildFP(root, "fp-prod1", "1.0", Arrays.asList(art));
+            Path fp = root.resolve("org/foo/bar/fp-prod1/1.0/fp-prod1-1.0.zip");
+            byte[] fpContent = Files.readAllBytes(fp);
+            byte[] notAZip = "not a zip".getBytes("UTF-8");
+
+            Path zip = dir.resolve("repo.zip");
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip.toFile())) {
+                add(out, "stored.zip", fpContent, ZipEntry.STORED);
+                add(out, "deflated.zip", fpContent, ZipEntry.DEFLATED);
+                add(out, "not-a-zip.zip", notAZip, ZipEntry.STORED);
+            }
+            SeekableByteChannel channel = FileChannel.open(zip, StandardOpenOption.READ);
+            try (ZipArchive archive = ZipArchive.of(new ZipFile(channel), channel)) {
+                SeekableByteChannel fpChannel = archive.newChannel(archive.getEntry("stored.zip"));
+                Assert.assertNotNull(fpChannel);
+                Assert.assertEquals(fpContent.length, fpChannel.size());
+                FeaturePackMetadata metadata = FeaturePackMetadata.read(fpChannel, "stored.zip");
+                Assert.assertEquals("fp-prod1", metadata.getProducer().getProducer().getName());
+                Assert.assertFalse(metadata.isPatch());
+                Assert.assertEquals(art.getEntry()[1], metadata.getVersionProps().get(art.getEntry()[0]).toString());
+
+                Assert.assertNull(archive.newChannel(archive.getEntry("deflated.zip")));
+                try (InputStream in = archive.getInputStream(archive.getEntry("deflated.zip"))) {
+                    FeaturePackMetadata streamed = FeaturePackMetadata.read(in, "deflated.zip");
+                    Assert.assertEquals(metadata.getProducer(), streamed.getProducer());
+                    Assert.assertEquals(metadata.getVersionProps(), streamed.getVersionProps());
+                }
+
+                Assert.assertNull(FeaturePackMetadata.read(archive.newChannel(archive.getEntry("not-a-zip.zip")), "not-a-zip.zip"));
+                // Closing the entry channels doesn't close the zip channel.
+                Assert.assertTrue(channel.isOpen());
+            }
+            Assert.assertFalse(channel.isOpen());
+        } finally {
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+
+    private static void add(ZipArchiveOutputStream out, String name, byte[] content, int method) throws Exception {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putArchiveEntry(entry);
+        out.write(content);
+        out.closeArchiveEntry();
+    }
+}
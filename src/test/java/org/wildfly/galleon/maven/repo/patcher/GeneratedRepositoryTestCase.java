@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jboss.galleon.util.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Patch a generated production-shaped repository, artifacts with classifiers
+ * and natives are patched in all the feature-packs.
+ *
+ * @author jdenise
+ */
+public class GeneratedRepositoryTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("generated-repo");
+        try {
+            Path repo = dir.resolve("repository.zip");
+            Path patch = dir.resolve("patch.zip");
+            Path output = dir.resolve("output.zip");
+            RepositoryGenerator generator = new RepositoryGenerator().
+                    setArtifacts(300).
+                    setGroups(20).
+                    setFeaturePacks(3).
+                    setPatchSize(30).
+                    setJarSize(2048);
+            generator.generate(repo, patch);
+
+            Set<String> extensions = new HashSet<>();
+            try (ZipFile zipFile = new ZipFile(repo.toFile())) {
+                Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    extensions.add(name.substring(name.lastIndexOf('.') + 1));
+                }
+            }
+            Assert.assertTrue(extensions.toString(), extensions.containsAll(Arrays.asList("jar", "so", "pom", "zip", "sha1", "md5")));
+
+            PatchResult result = Patcher.builder().
+                    setOriginalRepository(repo).
+                    setRepositoryPatch(patch).
+                    setOutput(output).
+                    setStreaming(true).
+                    setListener(new PatcherListener() {
+                    }).
+                    setWorkDir(dir.resolve("work")).
+                    build().patch();
+
+            Assert.assertEquals(3, result.getPatches().size());
+            Map<String, String> expected = new HashMap<>();
+            Map<String, String> patched = generator.getPatchedArtifacts();
+            for (Map.Entry<String, String> entry : generator.getOriginalPatchedArtifacts().entrySet()) {
+                expected.put(entry.getValue(), patched.get(entry.getKey()));
+            }
+            Map<String, String> actual = new HashMap<>();
+            for (PatchResult.CreatedPatch created : result.getPatches()) {
+                actual.putAll(created.getPatchedArtifacts());
+            }
+            Assert.assertEquals(expected, actual);
+
+            try (ZipFile zipFile = new ZipFile(output.toFile())) {
+                for (String artifact : expected.keySet()) {
+                    Assert.assertNull(artifact, zipFile.getEntry(RepositoryGenerator.REPOSITORY_ROOT
+                            + ArtifactUtils.convertToPath(artifact).toString().replace('\\', '/')));
+                }
+                for (String artifact : expected.values()) {
+                    Assert.assertNotNull(artifact, zipFile.getEntry(RepositoryGenerator.REPOSITORY_ROOT
+                            + ArtifactUtils.convertToPath(artifact).toString().replace('\\', '/')));
+                }
+            }
+        } finally {
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A maven repo patch artifact that doesn't match its .sha1 file must be
+ * rejected.
+ *
+ * @author jdenise
+ */
+public class InvalidChecksumTestCase extends MainTestCase {
+
+    @Override
+    @Test
+    public void test() throws Exception {
+        try {
+            runTest();
+            Assert.fail("Test case should have failed");
+        } catch (Exception ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().startsWith("Invalid checksums in maven repo patch"));
+        }
+    }
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        List<Artifact> artifacts = super.setup(root, patchedRoot);
+        for (Artifact a : artifacts) {
+            if (a instanceof PatchedArtifact) {
+                Path patched = patchedRoot.resolve(((PatchedArtifact) a).getPatched());
+                ChecksumsMainTestCase.writeChecksums(patched, "0123456789abcdef0123456789abcdef01234567", "0123456789abcdef0123456789abcdef");
+                break;
+            }
+        }
+        return artifacts;
+    }
+}
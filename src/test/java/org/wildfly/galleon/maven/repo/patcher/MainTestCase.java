@@ -85,13 +85,18 @@ public class MainTestCase extends AbstractMainTest {
         return lst;
     }
 
-    @Override
-    protected void done(Path outputRepo) throws Exception {
-        Path patches = outputRepo.resolve("patches.xml");
+    protected Set<String> getExpectedPatches() {
         Set<String> ids = new HashSet<>();
         ids.add("org.foo.bar:" + producer1 + ":" + expectedFpversion);
         ids.add("org.foo.bar:" + producer2 + ":" + expectedFpversion);
         ids.add("org.foo.bar:" + producer3 + ":" + expectedFpversion);
+        return ids;
+    }
+
+    @Override
+    protected void done(Path outputRepo) throws Exception {
+        Path patches = outputRepo.resolve("patches.xml");
+        Set<String> ids = getExpectedPatches();
         TestUtils.checkPatches(patches, ids);
 
         Path mavenRepo = outputRepo.resolve("maven-repository");
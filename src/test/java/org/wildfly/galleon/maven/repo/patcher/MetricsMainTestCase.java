@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The phase metrics are appended to the JSON report.
+ *
+ * @author jdenise
+ */
+public class MetricsMainTestCase extends AbstractMainTest {
+
+    final String producer1 = "fp-prod1";
+    final String fpVersion = "1.0-redhat-00001";
+    final String expectedFpversion = "1.0" + Patcher.PATCH_MARKER + "-redhat-00001";
+    final List<Artifact> lst = new ArrayList<>();
+    PatchedArtifact patched;
+
+    @Test
+    public void test() throws Exception {
+        runTest();
+    }
+
+    @Override
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        Path report = zippedRepo.resolveSibling("metrics.json");
+        String[] options = {Main.METRICS + report.toAbsolutePath()};
+        runMain(options, zippedRepo, zippedPatchedRepo, output);
+        runMain(options, zippedRepo, zippedPatchedRepo, output);
+
+        // One line per run.
+        List<String> runs = Files.readAllLines(report, StandardCharsets.UTF_8);
+        Assert.assertEquals(2, runs.size());
+        for (String run : runs) {
+            Assert.assertTrue(run, run.startsWith("{\"timestamp\":"));
+            Assert.assertTrue(run, run.contains("\"succeeded\":true"));
+            for (PatcherListener.Phase phase : PatcherListener.Phase.values()) {
+                Assert.assertTrue(run, run.contains("{\"phase\":\"" + phase + "\",\"wallTimeNanos\":"));
+            }
+        }
+    }
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        patched = TestUtils.createPatchedArtifact(root, patchedRoot, "org.foo.bar", "art1", "1.0", null, "jar");
+        lst.add(patched);
+        TestUtils.buildFP(root, producer1, fpVersion, lst);
+        System.setProperty(Patcher.FP_PATHS, "org/foo/bar/" + producer1);
+        return lst;
+    }
+
+    @Override
+    protected void done(Path outputRepo) throws Exception {
+        Set<String> ids = new HashSet<>();
+        ids.add("org.foo.bar:" + producer1 + ":" + expectedFpversion);
+        TestUtils.checkPatches(outputRepo.resolve("patches.xml"), ids);
+    }
+}
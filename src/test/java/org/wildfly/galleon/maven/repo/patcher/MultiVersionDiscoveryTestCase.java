@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jboss.galleon.util.IoUtils;
+import org.jboss.galleon.util.ZipUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Two versions of a feature-pack are discovered, both reference the same
+ * patched artifact, both are patched.
+ *
+ * @author jdenise
+ */
+public class MultiVersionDiscoveryTestCase extends AbstractMainTest {
+
+    private final String producer = "fp-prod1";
+    private final String[] fpVersions = {"1.0-redhat-00001", "1.1-redhat-00001"};
+    private final String[] expectedFpVersions = {"1.0" + Patcher.PATCH_MARKER + "-redhat-00001",
+        "1.1" + Patcher.PATCH_MARKER + "-redhat-00001"};
+    private PatchedArtifact shared;
+    private PatchedArtifact other;
+    private Artifact unpatched;
+
+    @Test
+    public void test() throws Exception {
+        runTest();
+    }
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        System.clearProperty(Patcher.FP_PATHS);
+        shared = TestUtils.createPatchedArtifact(root, patchedRoot, "org.foo.bar", "art1", "1.0", null, "jar");
+        other = TestUtils.createPatchedArtifact(root, patchedRoot, "org.foo.bar", "art2", "2.0", null, "jar");
+        unpatched = TestUtils.createArtifact(root, "org.foo.bar.no.patch", "art3", "3.0", null, "jar");
+        TestUtils.buildFP(root, producer, fpVersions[0], Arrays.asList(shared, unpatched));
+        TestUtils.buildFP(root, producer, fpVersions[1], Arrays.asList(shared, other, unpatched));
+        List<Artifact> lst = new ArrayList<>();
+        lst.add(shared);
+        lst.add(other);
+        lst.add(unpatched);
+        return lst;
+    }
+
+    @Override
+    protected void done(Path outputRepo) throws Exception {
+        Set<String> ids = new HashSet<>();
+        for (String version : expectedFpVersions) {
+            ids.add("org.foo.bar:" + producer + ":" + version);
+        }
+        TestUtils.checkPatches(outputRepo.resolve("patches.xml"), ids);
+
+        Path mavenRepo = outputRepo.resolve("maven-repository");
+        Assert.assertFalse(Files.exists(mavenRepo.resolve(shared.getPath()).getParent()));
+        Assert.assertTrue(Files.exists(mavenRepo.resolve(shared.getPatched())));
+        Assert.assertFalse(Files.exists(mavenRepo.resolve(other.getPath()).getParent()));
+        Assert.assertTrue(Files.exists(mavenRepo.resolve(other.getPatched())));
+        Assert.assertTrue(Files.exists(mavenRepo.resolve(unpatched.getPath())));
+
+        for (int i = 0; i < expectedFpVersions.length; i++) {
+            Path fpPath = mavenRepo.resolve(ArtifactUtils.convertToPath("org.foo.bar:" + producer + ":" + expectedFpVersions[i] + "::zip"));
+            Assert.assertTrue(fpPath.toString(), Files.exists(fpPath));
+            Path tmp = Files.createTempDirectory("fp");
+            try {
+                ZipUtils.unzip(fpPath, tmp);
+                Map<String, String> versions = ArtifactUtils.readProperties(tmp.resolve("resources").resolve("wildfly").resolve("artifact-versions.properties"));
+                Assert.assertEquals(shared.getPatchedEntry()[1], versions.get(shared.getEntry()[0]));
+                Assert.assertEquals(unpatched.getEntry()[1], versions.get(unpatched.getEntry()[0]));
+                if (i == 0) {
+                    Assert.assertEquals(2, versions.size());
+                } else {
+                    Assert.assertEquals(other.getPatchedEntry()[1], versions.get(other.getEntry()[0]));
+                    Assert.assertEquals(3, versions.size());
+                }
+            } finally {
+                IoUtils.recursiveDelete(tmp);
+            }
+        }
+    }
+}
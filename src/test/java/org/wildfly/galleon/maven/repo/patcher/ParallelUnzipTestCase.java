@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jboss.galleon.util.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class ParallelUnzipTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("parallel-unzip");
+        try {
+            // A large entry first, then small ones.
+            byte[] big = new byte[1024 * 1024];
+            new Random(42).nextBytes(big);
+            Path zip = dir.resolve("repo.zip");
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip.toFile())) {
+                out.putArchiveEntry(new ZipArchiveEntry("a/big.jar"));
+                out.write(big);
+                out.closeArchiveEntry();
+                for (int i = 0; i < 99; i++) {
+                    out.putArchiveEntry(new ZipArchiveEntry("a/b/small" + i + ".pom"));
+                    out.write(("small" + i).getBytes("UTF-8"));
+                    out.closeArchiveEntry();
+                }
+            }
+            try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+                List<ZipArchiveEntry> files = Collections.list(zipFile.getEntriesInPhysicalOrder());
+                // The large entry is alone in its slice.
+                int[] bounds = ParallelUnzip.slice(files, 4);
+                Assert.assertEquals(0, bounds[0]);
+                Assert.assertEquals(1, bounds[1]);
+                Assert.assertEquals(files.size(), bounds[4]);
+                for (int w = 0; w < 4; w++) {
+                    Assert.assertTrue(bounds[w] <= bounds[w + 1]);
+                }
+                // Entries of the same size are sliced by count.
+                List<ZipArchiveEntry> small = new ArrayList<>(files.subList(1, 9));
+                for (ZipArchiveEntry entry : small) {
+                    entry.setCompressedSize(10);
+                }
+                Assert.assertArrayEquals(new int[]{0, 2, 4, 6, 8}, ParallelUnzip.slice(small, 4));
+
+                Path target = dir.resolve("target");
+                ParallelUnzip.unzip(zipFile, target, new PatcherOptions().setParallelism(4));
+                Assert.assertArrayEquals(big, Files.readAllBytes(target.resolve("a/big.jar")));
+                for (int i = 0; i < 99; i++) {
+                    Assert.assertEquals("small" + i, new String(Files.readAllBytes(target.resolve("a/b/small" + i + ".pom")), "UTF-8"));
+                }
+            }
+        } finally {
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Jobs sent to the local patch service, the original repository is read once.
+ *
+ * @author jdenise
+ */
+public class PatchServerTestCase extends AbstractMainTest {
+
+    final String producer1 = "fp-prod1";
+    final String fpVersion = "1.0-redhat-00001";
+    final String expectedFpversion = "1.0" + Patcher.PATCH_MARKER + "-redhat-00001";
+    final List<Artifact> lst = new ArrayList<>();
+    PatchedArtifact patched;
+
+    private static final class RecordingListener implements PatcherListener {
+
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void info(String message) {
+            messages.add(message);
+        }
+    }
+
+    @Test
+    public void test() throws Exception {
+        runTest();
+    }
+
+    @Override
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        RecordingListener listener = new RecordingListener();
+        PatcherOptions options = new PatcherOptions().setListener(listener).setReproducible(true);
+        try (PatchServer server = new PatchServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), options, 2, 1)) {
+            server.start();
+            String base = "http://localhost:" + server.getPort() + PatchServer.PATCH_PATH;
+
+            HttpURLConnection missing = post(new URL(base + "?" + PatchServer.REPO + "=" + URLEncoder.encode(
+                    zippedRepo.resolveSibling("missing.zip").toAbsolutePath().toString(), "UTF-8")), zippedPatchedRepo);
+            Assert.assertEquals(400, missing.getResponseCode());
+
+            URL url = new URL(base + "?" + PatchServer.REPO + "=" + URLEncoder.encode(zippedRepo.toAbsolutePath().toString(), "UTF-8"));
+            HttpURLConnection first = post(url, zippedPatchedRepo);
+            Assert.assertEquals(200, first.getResponseCode());
+            try (InputStream in = first.getInputStream()) {
+                Files.copy(in, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+            HttpURLConnection second = post(url, zippedPatchedRepo);
+            Assert.assertEquals(200, second.getResponseCode());
+            Path output2 = Files.createTempFile("maven-repo-test", ".zip");
+            try {
+                try (InputStream in = second.getInputStream()) {
+                    Files.copy(in, output2, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Assert.assertArrayEquals(Files.readAllBytes(output), Files.readAllBytes(output2));
+            } finally {
+                Files.delete(output2);
+            }
+        }
+        Assert.assertTrue(listener.messages.contains("Using cached maven repo " + zippedRepo.toAbsolutePath().normalize()));
+    }
+
+    private static HttpURLConnection post(URL url, Path body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(Files.size(body));
+        try (OutputStream out = connection.getOutputStream()) {
+            Files.copy(body, out);
+        }
+        return connection;
+    }
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        patched = TestUtils.createPatchedArtifact(root, patchedRoot, "org.foo.bar", "art1", "1.0", null, "jar");
+        lst.add(patched);
+        TestUtils.buildFP(root, producer1, fpVersion, lst);
+        System.setProperty(Patcher.FP_PATHS, "org/foo/bar/" + producer1);
+        return lst;
+    }
+
+    @Override
+    protected void done(Path outputRepo) throws Exception {
+        Set<String> ids = new HashSet<>();
+        ids.add("org.foo.bar:" + producer1 + ":" + expectedFpversion);
+        TestUtils.checkPatches(outputRepo.resolve("patches.xml"), ids);
+        Path mavenRepo = outputRepo.resolve("maven-repository");
+        Assert.assertFalse(Files.exists(mavenRepo.resolve(patched.getPath())));
+        Assert.assertTrue(Files.exists(mavenRepo.resolve(patched.getPatched())));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class PathTrieTestCase {
+
+    @Test
+    public void test() throws Exception {
+        PathTrie trie = new PathTrie();
+        Assert.assertTrue(trie.isEmpty());
+        Path jar = Paths.get("org/foo/bar/art1/1.0/art1-1.0.jar");
+        Path sha1 = Paths.get("org/foo/bar/art1/1.0/art1-1.0.jar.sha1");
+        Path lib = Paths.get("org/foo/bar/art1/1.0/art1-1.0-linux-x86_64.so");
+        Path pom = Paths.get("org/foo/bar/art1/1.0/art1-1.0.pom");
+        Path other = Paths.get("org/foo/bar/art2/2.0/art2-2.0.jar");
+        for (Path p : Arrays.asList(sha1, jar, pom, other, lib)) {
+            Assert.assertTrue(trie.add(p));
+        }
+        Assert.assertFalse(trie.add(Paths.get(jar.toString())));
+        Assert.assertEquals(5, trie.size());
+        Assert.assertTrue(trie.contains(jar));
+        Assert.assertFalse(trie.contains(jar.getParent()));
+        Assert.assertFalse(trie.contains(Paths.get("org/foo/bar/art1/1.0/art1-1.0.war")));
+
+        // Sorted.
+        List<Path> all = new ArrayList<>();
+        for (Path p : trie) {
+            all.add(p);
+        }
+        Assert.assertEquals(Arrays.asList(lib, jar, sha1, pom, other), all);
+        Assert.assertEquals(Arrays.asList(lib, jar, sha1, pom), trie.children(jar.getParent()));
+        Assert.assertTrue(trie.children(Paths.get("org/foo/bar/art3")).isEmpty());
+        Assert.assertTrue(trie.containsDir(jar.getParent()));
+        Assert.assertFalse(trie.containsDir(jar));
+        Assert.assertEquals(Arrays.asList(jar.getParent(), other.getParent()), trie.parents());
+
+        // Siblings starting with the file name.
+        Assert.assertEquals(Arrays.asList(jar, sha1), trie.startingWith(jar));
+        Assert.assertEquals(Arrays.asList(lib, jar, sha1, pom), trie.startingWith(jar.getParent().resolve("art1-1.0")));
+        Assert.assertTrue(trie.startingWith(Paths.get("org/foo/bar/art3/1.0/art3-1.0.jar")).isEmpty());
+
+        // A directory is listed before its sub directories.
+        Path metadata = Paths.get("org/foo/bar/art1/maven-metadata.xml");
+        trie.add(metadata);
+        Assert.assertEquals(Arrays.asList(metadata.getParent(), jar.getParent(), other.getParent()), trie.parents());
+
+        // Names stored after the artifactId-version stem or not are sorted and matched the same.
+        Random random = new Random(0);
+        String[] parts = {"art3", "-", "1.0", ".", "jar", "pom", "sha1", "linux-x86_64", "so", "_", "~", "a", ""};
+        Path dir = Paths.get("org/foo/bar/art3/1.0");
+        PathTrie mixed = new PathTrie();
+        TreeSet<String> names = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder name = new StringBuilder(random.nextBoolean() ? "art3-1.0" : "");
+            for (int j = random.nextInt(5); j >= 0; j--) {
+                name.append(parts[random.nextInt(parts.length)]);
+            }
+            if (name.length() > 0) {
+                names.add(name.toString());
+                mixed.add(dir.resolve(name.toString()));
+            }
+        }
+        List<Path> expected = new ArrayList<>();
+        for (String name : names) {
+            expected.add(dir.resolve(name));
+        }
+        Assert.assertEquals(expected, mixed.children(dir));
+        for (String prefix : new String[]{"a", "art3", "art3-", "art3-1.0", "art3-1.0.", "art3-1.0.jar", "art3-1.1", "_", "z"}) {
+            List<Path> matching = new ArrayList<>();
+            for (String name : names) {
+                if (name.startsWith(prefix)) {
+                    matching.add(dir.resolve(name));
+                }
+            }
+            Assert.assertEquals(prefix, matching, mixed.startingWith(dir.resolve(prefix)));
+        }
+        for (String name : names) {
+            Assert.assertTrue(name, mixed.contains(dir.resolve(name)));
+        }
+
+        for (Path invalid : Arrays.asList(Paths.get(""), jar.toAbsolutePath())) {
+            try {
+                trie.add(invalid);
+                Assert.fail(invalid.toString());
+            } catch (IllegalArgumentException ex) {
+                // Expected
+            }
+        }
+    }
+}
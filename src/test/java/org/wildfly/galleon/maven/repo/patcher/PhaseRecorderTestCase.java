@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.galleon.maven.repo.patcher.PatcherListener.Phase;
+
+/**
+ *
+ * @author jdenise
+ */
+public class PhaseRecorderTestCase {
+
+    private static final long WORKER_CPU = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    public void test() throws Exception {
+        PhaseRecorder recorder = new PhaseRecorder(new IoStats());
+        recorder.start(Phase.READ_REPOSITORIES);
+        // The CPU of a terminated worker is still counted.
+        ExecutorService executor = ParallelUtils.newExecutor(1, "test");
+        executor.submit(() -> {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            while (threads.getCurrentThreadCpuTime() < WORKER_CPU) {
+                // Burn CPU
+            }
+        }).get();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        PhaseMetrics metrics = recorder.complete();
+        if (metrics.getCpuTimeNanos() >= 0) {
+            Assert.assertTrue(metrics.toString(), metrics.getCpuTimeNanos() >= WORKER_CPU);
+        }
+        Assert.assertTrue(metrics.getPeakHeapBytes() > 0);
+
+        // Another run during the phase, the heap is not reported.
+        recorder.start(Phase.SCAN_FEATURE_PACKS);
+        PhaseRecorder other = new PhaseRecorder(new IoStats());
+        other.start(Phase.READ_REPOSITORIES);
+        Assert.assertEquals(-1, other.complete().getPeakHeapBytes());
+        other.finish();
+        Assert.assertEquals(-1, recorder.complete().getPeakHeapBytes());
+        recorder.finish();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import org.jboss.galleon.util.IoUtils;
+import org.jboss.galleon.util.ZipUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class RepositoryCacheTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("repo-cache");
+        ExecutorService executor = ParallelUtils.newExecutor(4, "open");
+        try (RepositoryCache cache = new RepositoryCache(2)) {
+            Path root = dir.resolve("repo").resolve("maven-repository");
+            Files.createDirectories(root);
+            Artifact artifact = TestUtils.createArtifact(root, "org.foo.bar", "art1", "1.0", null, "jar");
+            Path zip = dir.resolve("repo.zip");
+            ZipUtils.zip(dir.resolve("repo"), zip);
+            PatcherOptions options = new PatcherOptions();
+
+            // Concurrent runs on the same repository share it.
+            List<Callable<Boolean>> runs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                runs.add(() -> {
+                    try (MavenRepository repository = cache.open(zip, options)) {
+                        return repository.exists(artifact.getPath());
+                    }
+                });
+            }
+            Assert.assertEquals(Collections.nCopies(4, true), ParallelUtils.invokeAll(executor, runs));
+            Assert.assertEquals(Collections.singletonList(zip.toAbsolutePath().normalize()), cache.getRepositories());
+
+            // A repository that can't be read is not cached.
+            Path invalid = dir.resolve("invalid.zip");
+            Files.write(invalid, "not a zip".getBytes("UTF-8"));
+            try {
+                cache.open(invalid, options).close();
+                Assert.fail("Invalid zip opened");
+            } catch (Exception ex) {
+                // Expected
+            }
+            Assert.assertEquals(Collections.singletonList(zip.toAbsolutePath().normalize()), cache.getRepositories());
+
+            try (MavenRepository repository = cache.open(Paths.get(zip.toString()), options)) {
+                Assert.assertTrue(repository.exists(artifact.getPath()));
+            }
+        } finally {
+            executor.shutdownNow();
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+}
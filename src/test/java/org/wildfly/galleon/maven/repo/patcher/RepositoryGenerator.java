@@ -0,0 +1,400 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.jboss.galleon.spec.FeaturePackSpec;
+import org.jboss.galleon.universe.FeaturePackLocation;
+import org.jboss.galleon.xml.FeaturePackXmlWriter;
+
+/**
+ * Generate a production-shaped zipped repository and a maven repo patch for
+ * it. The repository contains artifacts spread over many groupIds, some with
+ * a classifier, some with a native .so, all with a pom and .sha1 and .md5
+ * checksums. The jars and natives are random, incompressible, content. The
+ * artifacts are referenced by galleon feature-packs, the first feature-pack
+ * artifacts being referenced by all of them, as core ones are. The patch
+ * contains new versions of a subset of the artifacts spread over the
+ * repository. Everything is derived from the seed, two runs with the same
+ * settings generate the same zips.
+ * <p>
+ * Usage: RepositoryGenerator &lt;output dir&gt; [--artifacts=&lt;n&gt;]
+ * [--groups=&lt;n&gt;] [--feature-packs=&lt;n&gt;] [--patch-size=&lt;n&gt;]
+ * [--jar-size=&lt;bytes&gt;] [--seed=&lt;n&gt;], writes repository.zip and
+ * patch.zip in the output dir.
+ *
+ * @author jdenise
+ */
+public final class RepositoryGenerator {
+
+    static final String FP_GROUP_ID = "org.synthetic.galleon";
+    static final String FP_VERSION = "1.0.0-redhat-00001";
+    static final String REPOSITORY_ROOT = "synthetic-image-builder-maven-repository/maven-repository/";
+    static final String PATCH_ROOT = "synthetic-maven-repo-patch/maven-repository/";
+    static final String NATIVE_CLASSIFIER = "linux-x86_64";
+    static final String CLIENT_CLASSIFIER = "client";
+    private static final String ORIGINAL_BUILD = "-redhat-00001";
+    private static final String PATCHED_BUILD = "-redhat-00002";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String ARTIFACTS = "--artifacts=";
+    private static final String GROUPS = "--groups=";
+    private static final String FEATURE_PACKS = "--feature-packs=";
+    private static final String PATCH_SIZE = "--patch-size=";
+    private static final String JAR_SIZE = "--jar-size=";
+    private static final String SEED = "--seed=";
+
+    /**
+     * A groupId:artifactId:version directory, its main jar and its classified
+     * files.
+     */
+    private static final class Module {
+
+        private final int index;
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final List<String[]> files = new ArrayList<>();
+        private final int featurePack;
+        private final int size;
+
+        private Module(int index, String groupId, String artifactId, String version, int featurePack, int size) {
+            this.index = index;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.featurePack = featurePack;
+            this.size = size;
+        }
+
+        private String getVersion(boolean patched) {
+            return patched ? version.replace(ORIGINAL_BUILD, PATCHED_BUILD) : version;
+        }
+
+        private String getDir(boolean patched) {
+            return groupId.replace('.', '/') + "/" + artifactId + "/" + getVersion(patched) + "/";
+        }
+
+        private String getFileName(String[] file, boolean patched) {
+            return artifactId + "-" + getVersion(patched) + (file[0].isEmpty() ? "" : "-" + file[0]) + "." + file[1];
+        }
+
+        private String getKey(String[] file) {
+            return groupId + ":" + artifactId + (file[0].isEmpty() ? "" : "::" + file[0]);
+        }
+
+        private String getValue(String[] file, boolean patched) {
+            return groupId + ":" + artifactId + ":" + getVersion(patched) + ":" + file[0] + ":" + file[1];
+        }
+    }
+
+    private int artifacts = 1000;
+    private int groups = 100;
+    private int featurePacks = 3;
+    private int patchSize = 10;
+    private int jarSize = 16 * 1024;
+    private long seed;
+
+    private List<Module> modules;
+    private List<Module> patchedModules;
+
+    /**
+     * @param artifacts The number of groupId:artifactId:version directories.
+     */
+    RepositoryGenerator setArtifacts(int artifacts) {
+        this.artifacts = artifacts;
+        return this;
+    }
+
+    RepositoryGenerator setGroups(int groups) {
+        this.groups = groups;
+        return this;
+    }
+
+    RepositoryGenerator setFeaturePacks(int featurePacks) {
+        this.featurePacks = featurePacks;
+        return this;
+    }
+
+    /**
+     * @param patchSize The number of patched groupId:artifactId:version
+     * directories, at most the number of artifacts.
+     */
+    RepositoryGenerator setPatchSize(int patchSize) {
+        this.patchSize = patchSize;
+        return this;
+    }
+
+    /**
+     * @param jarSize The average size of jars and natives, one artifact out of
+     * 100 is 10 times bigger.
+     */
+    RepositoryGenerator setJarSize(int jarSize) {
+        this.jarSize = jarSize;
+        return this;
+    }
+
+    RepositoryGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Write the zipped repository and the zipped maven repo patch.
+     */
+    void generate(Path repository, Path patch) throws Exception {
+        if (artifacts < featurePacks || featurePacks < 1) {
+            throw new IllegalArgumentException("At least one feature-pack and one artifact per feature-pack expected");
+        }
+        createModules();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(repository.toFile())) {
+            Set<String> dirs = new HashSet<>();
+            for (Module module : modules) {
+                writeModule(zip, dirs, REPOSITORY_ROOT, module, false);
+            }
+            for (int i = 0; i < featurePacks; i++) {
+                String producer = "synthetic-galleon-pack-" + i;
+                String dir = REPOSITORY_ROOT + FP_GROUP_ID.replace('.', '/') + "/" + producer + "/" + FP_VERSION + "/";
+                String name = producer + "-" + FP_VERSION;
+                writeFile(zip, dirs, dir + name + ".zip", buildFeaturePack(producer, i));
+                writeFile(zip, dirs, dir + name + ".pom", pom(FP_GROUP_ID, producer, FP_VERSION));
+            }
+        }
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(patch.toFile())) {
+            Set<String> dirs = new HashSet<>();
+            for (Module module : patchedModules) {
+                writeModule(zip, dirs, PATCH_ROOT, module, true);
+            }
+        }
+    }
+
+    /**
+     * @return The artifact-versions.properties entries of all the artifacts.
+     */
+    Map<String, String> getArtifacts() {
+        return getEntries(modules, false);
+    }
+
+    /**
+     * @return The artifact-versions.properties entries of the patched
+     * artifacts, with their new version.
+     */
+    Map<String, String> getPatchedArtifacts() {
+        return getEntries(patchedModules, true);
+    }
+
+    /**
+     * @return The artifact-versions.properties entries of the patched
+     * artifacts, with their original version.
+     */
+    Map<String, String> getOriginalPatchedArtifacts() {
+        return getEntries(patchedModules, false);
+    }
+
+    private static Map<String, String> getEntries(List<Module> lst, boolean patched) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (Module module : lst) {
+            for (String[] file : module.files) {
+                entries.put(module.getKey(file), module.getValue(file, patched));
+            }
+        }
+        return entries;
+    }
+
+    private void createModules() {
+        Random random = new Random(seed);
+        modules = new ArrayList<>();
+        for (int i = 0; i < artifacts; i++) {
+            int group = i % groups;
+            // Nested groupIds, as org.foo and org.foo.bar.
+            String groupId = "org.synthetic.group" + group + (group % 3 == 0 ? ".impl" : "");
+            String version = (1 + i % 5) + "." + (i % 10) + ".0.Final" + ORIGINAL_BUILD;
+            int size = jarSize / 4 + random.nextInt(Math.max(1, jarSize * 3 / 2));
+            if (i % 100 == 99) {
+                size *= 10;
+            }
+            Module module = new Module(i, groupId, "synthetic-artifact-" + i, version, i % featurePacks, size);
+            module.files.add(new String[]{"", "jar"});
+            if (i % 25 == 12) {
+                module.files.add(new String[]{NATIVE_CLASSIFIER, "so"});
+            } else if (i % 10 == 4) {
+                module.files.add(new String[]{CLIENT_CLASSIFIER, "jar"});
+            }
+            modules.add(module);
+        }
+        // Spread the patched artifacts over the whole repository.
+        patchedModules = new ArrayList<>();
+        int count = Math.min(patchSize, artifacts);
+        for (int i = 0; i < count; i++) {
+            patchedModules.add(modules.get((int) ((long) i * artifacts / count)));
+        }
+    }
+
+    private void writeModule(ZipArchiveOutputStream zip, Set<String> dirs, String root, Module module,
+            boolean patched) throws IOException {
+        String dir = root + module.getDir(patched);
+        for (String[] file : module.files) {
+            Random random = new Random(seed * 31 + module.index * 7 + (patched ? 3 : 0) + file[0].hashCode());
+            writeFile(zip, dirs, dir + module.getFileName(file, patched), random, module.size);
+        }
+        writeFile(zip, dirs, dir + module.artifactId + "-" + module.getVersion(patched) + ".pom",
+                pom(module.groupId, module.artifactId, module.getVersion(patched)));
+    }
+
+    private static void writeFile(ZipArchiveOutputStream zip, Set<String> dirs, String name, Random random,
+            int size) throws IOException {
+        putEntry(zip, dirs, name);
+        Checksums checksums = new Checksums();
+        byte[] buffer = new byte[Math.min(size, BUFFER_SIZE)];
+        int remaining = size;
+        while (remaining > 0) {
+            int length = Math.min(remaining, buffer.length);
+            random.nextBytes(buffer);
+            zip.write(buffer, 0, length);
+            checksums.update(buffer, 0, length);
+            remaining -= length;
+        }
+        zip.closeArchiveEntry();
+        writeChecksums(zip, dirs, name, checksums);
+    }
+
+    private static void writeFile(ZipArchiveOutputStream zip, Set<String> dirs, String name, byte[] content) throws IOException {
+        putEntry(zip, dirs, name);
+        zip.write(content);
+        zip.closeArchiveEntry();
+        Checksums checksums = new Checksums();
+        checksums.update(content, 0, content.length);
+        writeChecksums(zip, dirs, name, checksums);
+    }
+
+    private static void writeChecksums(ZipArchiveOutputStream zip, Set<String> dirs, String name, Checksums checksums) throws IOException {
+        putEntry(zip, dirs, name + Checksums.MD5);
+        zip.write(checksums.getMd5().getBytes(StandardCharsets.US_ASCII));
+        zip.closeArchiveEntry();
+        putEntry(zip, dirs, name + Checksums.SHA1);
+        zip.write(checksums.getSha1().getBytes(StandardCharsets.US_ASCII));
+        zip.closeArchiveEntry();
+    }
+
+    // Directories are written before their first file.
+    private static void putEntry(ZipArchiveOutputStream zip, Set<String> dirs, String name) throws IOException {
+        int i = name.indexOf('/');
+        while (i >= 0) {
+            String dir = name.substring(0, i + 1);
+            if (dirs.add(dir)) {
+                zip.putArchiveEntry(new ZipArchiveEntry(dir));
+                zip.closeArchiveEntry();
+            }
+            i = name.indexOf('/', i + 1);
+        }
+        zip.putArchiveEntry(new ZipArchiveEntry(name));
+    }
+
+    private static byte[] pom(String groupId, String artifactId, String version) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <groupId>" + groupId + "</groupId>\n"
+                + "    <artifactId>" + artifactId + "</artifactId>\n"
+                + "    <version>" + version + "</version>\n"
+                + "</project>\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] buildFeaturePack(String producer, int index) throws Exception {
+        // The first feature-pack artifacts are referenced by all the feature-packs.
+        Map<String, String> versions = new TreeMap<>();
+        for (Module module : modules) {
+            if (module.featurePack == index || module.featurePack == 0) {
+                for (String[] file : module.files) {
+                    versions.put(module.getKey(file), module.getValue(file, false));
+                }
+            }
+        }
+        StringBuilder props = new StringBuilder();
+        for (Map.Entry<String, String> entry : versions.entrySet()) {
+            props.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        FeaturePackLocation.FPID fpid = FeaturePackLocation.fromString(FP_GROUP_ID + ":" + producer + ":" + FP_VERSION).getFPID();
+        Path xml = Files.createTempFile("feature-pack", ".xml");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            FeaturePackXmlWriter.getInstance().write(FeaturePackSpec.builder(fpid).build(), xml);
+            try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+                Set<String> dirs = new HashSet<>();
+                putEntry(zip, dirs, FeaturePackMetadata.FEATURE_PACK_XML);
+                zip.write(Files.readAllBytes(xml));
+                zip.closeArchiveEntry();
+                putEntry(zip, dirs, FeaturePackMetadata.ARTIFACT_VERSIONS);
+                zip.write(props.toString().getBytes(StandardCharsets.UTF_8));
+                zip.closeArchiveEntry();
+            }
+        } finally {
+            Files.delete(xml);
+        }
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: RepositoryGenerator <output dir> [" + ARTIFACTS + "<n>] [" + GROUPS + "<n>] ["
+                    + FEATURE_PACKS + "<n>] [" + PATCH_SIZE + "<n>] [" + JAR_SIZE + "<bytes>] [" + SEED + "<n>]");
+            System.exit(1);
+        }
+        RepositoryGenerator generator = new RepositoryGenerator();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith(ARTIFACTS)) {
+                generator.setArtifacts(Integer.parseInt(arg.substring(ARTIFACTS.length())));
+            } else if (arg.startsWith(GROUPS)) {
+                generator.setGroups(Integer.parseInt(arg.substring(GROUPS.length())));
+            } else if (arg.startsWith(FEATURE_PACKS)) {
+                generator.setFeaturePacks(Integer.parseInt(arg.substring(FEATURE_PACKS.length())));
+            } else if (arg.startsWith(PATCH_SIZE)) {
+                generator.setPatchSize(Integer.parseInt(arg.substring(PATCH_SIZE.length())));
+            } else if (arg.startsWith(JAR_SIZE)) {
+                generator.setJarSize(Integer.parseInt(arg.substring(JAR_SIZE.length())));
+            } else if (arg.startsWith(SEED)) {
+                generator.setSeed(Long.parseLong(arg.substring(SEED.length())));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        Path dir = Paths.get(args[0]);
+        Files.createDirectories(dir);
+        Path repository = dir.resolve("repository.zip");
+        Path patch = dir.resolve("patch.zip");
+        generator.generate(repository, patch);
+        System.out.println("Generated " + repository + " (" + Files.size(repository) / (1024 * 1024) + " MB, "
+                + generator.getArtifacts().size() + " artifacts) and " + patch + " ("
+                + Files.size(patch) / (1024 * 1024) + " MB, " + generator.getPatchedArtifacts().size() + " artifacts)");
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jboss.galleon.util.IoUtils;
+import org.jboss.galleon.util.ZipUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class RepositoryIndexTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("repo-index");
+        try {
+            Path root = dir.resolve("repo").resolve("builder-image").resolve("maven-repository");
+            Files.createDirectories(root);
+            TestUtils.createArtifact(root, "org.foo.bar", "art1", "1.0", null, "jar");
+            TestUtils.createArtifact(root, "org.foo.bar", "art1", "1.0", "lib", "so");
+            TestUtils.createArtifact(root, "org.foo", "art2", "2.0", null, "jar");
+            Path zip = dir.resolve("repo.zip");
+            ZipUtils.zip(dir.resolve("repo"), zip);
+
+            RepositoryIndex built;
+            RepositoryIndex loaded;
+            try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+                built = RepositoryIndex.loadOrBuild(zipFile, zip, ConsoleListener.INSTANCE);
+                Assert.assertTrue(Files.exists(dir.resolve("repo.zip" + RepositoryIndex.INDEX_SUFFIX)));
+                loaded = RepositoryIndex.loadOrBuild(zipFile, zip, ConsoleListener.INSTANCE);
+            }
+            Assert.assertEquals("builder-image/", loaded.getParentPrefix());
+            Assert.assertEquals("builder-image/maven-repository/", loaded.getRootPrefix());
+            Assert.assertEquals(built.size(), loaded.size());
+            for (int i = 0; i < built.size(); i++) {
+                Assert.assertEquals(built.getName(i), loaded.getName(i));
+                if (i > 0) {
+                    Assert.assertTrue(loaded.getName(i - 1).compareTo(loaded.getName(i)) < 0);
+                }
+            }
+            Assert.assertTrue(loaded.find("builder-image/maven-repository/org/foo/bar/art1/1.0/art1-1.0-lib.so") >= 0);
+            Assert.assertTrue(loaded.find("builder-image/maven-repository/org/foo/bar/art1/1.0/art1-1.0.pom") < 0);
+            int i = loaded.ceiling("builder-image/maven-repository/org/foo/art2/");
+            Assert.assertTrue(loaded.getName(i).startsWith("builder-image/maven-repository/org/foo/art2/"));
+        } finally {
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+}
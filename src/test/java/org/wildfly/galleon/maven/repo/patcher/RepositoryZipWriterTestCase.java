@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.jboss.galleon.util.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author jdenise
+ */
+public class RepositoryZipWriterTestCase {
+
+    @Test
+    public void test() throws Exception {
+        Path dir = Files.createTempDirectory("zip-writer");
+        try {
+            // More chunks than the budget of a single worker, partly compressible, partly random.
+            byte[] big = new byte[5 * 1024 * 1024 + 12345];
+            Random random = new Random(42);
+            for (int i = 0; i < big.length; i++) {
+                big[i] = (byte) (i % 3 == 0 ? random.nextInt() : i / 1000);
+            }
+            Path bigFile = dir.resolve("big.txt");
+            Files.write(bigFile, big);
+            Path smallFile = dir.resolve("small.pom");
+            Files.write(smallFile, "<project/>".getBytes("UTF-8"));
+            Path emptyFile = dir.resolve("empty.txt");
+            Files.write(emptyFile, new byte[0]);
+            Path jarFile = dir.resolve("art.jar");
+            Files.write(jarFile, Arrays.copyOf(big, 100000));
+            Path bigJarFile = dir.resolve("big.jar");
+            Files.write(bigJarFile, big);
+
+            // Seekable output, the CRC of the stored entries is computed while copying.
+            Path zip = dir.resolve("out.zip");
+            try (RepositoryZipWriter writer = new RepositoryZipWriter(zip, new PatcherOptions().setParallelism(4).setCompressionLevel(1))) {
+                add(writer, bigFile, smallFile, jarFile, bigJarFile, emptyFile);
+            }
+            check(zip, big, smallFile, jarFile);
+
+            // Sequential output, the CRC of the stored entries is computed first.
+            Path streamed = dir.resolve("streamed.zip");
+            try (RepositoryZipWriter writer = new RepositoryZipWriter(Files.newOutputStream(streamed),
+                    new PatcherOptions().setCompressionLevel(1), 1)) {
+                add(writer, bigFile, smallFile, jarFile, bigJarFile, emptyFile);
+            }
+            check(streamed, big, smallFile, jarFile);
+        } finally {
+            IoUtils.recursiveDelete(dir);
+        }
+    }
+
+    private static void add(RepositoryZipWriter writer, Path bigFile, Path smallFile, Path jarFile, Path bigJarFile,
+            Path emptyFile) throws Exception {
+        writer.add("a/b/big.txt", bigFile);
+        writer.add("a/b/small.pom", smallFile);
+        writer.addDir("a/c");
+        writer.add("a/c/art.jar", jarFile);
+        writer.add("a/c/big.jar", bigJarFile);
+        writer.add("a/empty.txt", emptyFile);
+        Assert.assertEquals(5, writer.getAddedEntries());
+    }
+
+    private static void check(Path zip, byte[] big, Path smallFile, Path jarFile) throws Exception {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            List<String> names = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+            Assert.assertEquals(Arrays.asList("a/", "a/b/", "a/b/big.txt", "a/b/small.pom", "a/c/", "a/c/art.jar", "a/c/big.jar",
+                    "a/empty.txt"), names);
+            Assert.assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("a/b/big.txt").getMethod());
+            Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("a/c/art.jar").getMethod());
+            Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("a/c/big.jar").getMethod());
+            Assert.assertArrayEquals(big, read(zipFile, "a/b/big.txt"));
+            Assert.assertArrayEquals(Files.readAllBytes(jarFile), read(zipFile, "a/c/art.jar"));
+            Assert.assertArrayEquals(big, read(zipFile, "a/c/big.jar"));
+            Assert.assertArrayEquals(Files.readAllBytes(smallFile), read(zipFile, "a/b/small.pom"));
+            Assert.assertEquals(0, read(zipFile, "a/empty.txt").length);
+        }
+    }
+
+    private static byte[] read(ZipFile zipFile, String name) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Assert;
+
+/**
+ * Same checks as MainTestCase, 2 runs must generate the same bytes in the
+ * extracted and streaming modes, with and without --delta. The files written
+ * in the work dir by each run get a different modification time before the
+ * output is written.
+ *
+ * @author jdenise
+ */
+public class ReproducibleMainTestCase extends MainTestCase {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Override
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        Path first = Files.createTempFile("maven-repo-first", ".zip");
+        Path second = Files.createTempFile("maven-repo-second", ".zip");
+        try {
+            for (boolean streaming : new boolean[]{false, true}) {
+                for (boolean delta : new boolean[]{false, true}) {
+                    String mode = (streaming ? "streaming" : "extracted") + (delta ? " delta" : "");
+                    // The extracted full repository is the one checked by MainTestCase.
+                    Path out = streaming || delta ? second : output;
+                    patch(zippedRepo, zippedPatchedRepo, first, streaming, delta, FileTime.fromMillis(DAY * 365));
+                    patch(zippedRepo, zippedPatchedRepo, out, streaming, delta, FileTime.fromMillis(DAY * 730));
+                    Assert.assertArrayEquals(mode, Files.readAllBytes(first), Files.readAllBytes(out));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+        }
+    }
+
+    private static void patch(Path zippedRepo, Path zippedPatchedRepo, Path output, boolean streaming, boolean delta,
+            FileTime time) throws Exception {
+        Path workDir = zippedRepo.resolveSibling("reproducible-work-dir");
+        PatcherOptions options = new PatcherOptions().setReproducible(true).setStreaming(streaming).setDelta(delta).
+                setWorkDir(workDir).setListener(new PatcherListener() {
+                    @Override
+                    public void phaseStarted(Phase phase) {
+                        if (phase == Phase.WRITE_OUTPUT) {
+                            setLastModifiedTime(workDir, time);
+                        }
+                    }
+                });
+        new Patcher(zippedRepo, zippedPatchedRepo, output, options).patch();
+    }
+
+    private static void setLastModifiedTime(Path dir, FileTime time) {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path file : stream.collect(Collectors.toList())) {
+                Files.setLastModifiedTime(file, time);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
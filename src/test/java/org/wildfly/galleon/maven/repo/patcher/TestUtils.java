@@ -77,7 +77,7 @@ public class TestUtils {
             builder.append("-" + classifier);
         }
         Path file = dir.resolve(builder.toString() + "." + extension);
-        Files.createFile(file);
+        Files.write(file, ("original " + file.getFileName()).getBytes("UTF-8"));
         Path pomFile = dir.resolve(builder.toString() + ".pom");
         Files.createFile(pomFile);
         Path sha1 = dir.resolve(builder.toString() + "." + extension + ".sha1");
@@ -95,7 +95,7 @@ public class TestUtils {
         }
         builderPatched.append("." + extension);
         Path patchedFile = dirPatched.resolve(builderPatched.toString());
-        Files.createFile(patchedFile);
+        Files.write(patchedFile, ("patched " + patchedFile.getFileName()).getBytes("UTF-8"));
         return new PatchedArtifact(rootDir.relativize(file), patchedRootDir.relativize(patchedFile));
     }
 
@@ -110,7 +110,7 @@ public class TestUtils {
         }
         builderPatched.append("." + extension);
         Path patchedFile = dirPatched.resolve(builderPatched.toString());
-        Files.createFile(patchedFile);
+        Files.write(patchedFile, ("patched " + patchedFile.getFileName()).getBytes("UTF-8"));
         return new PatchedArtifact(null, patchedRootDir.relativize(patchedFile));
     }
 
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jboss.galleon.util.IoUtils;
+import org.jboss.galleon.util.ZipUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Artifacts of the maven repo patch that have the same content as the
+ * artifacts they replace are not patched.
+ *
+ * @author jdenise
+ */
+public class UnchangedArtifactsTestCase extends AbstractMainTest {
+
+    final String producer1 = "fp-prod1";
+    final String fpVersion = "1.0-redhat-00001";
+    final String expectedFpversion = "1.0" + Patcher.PATCH_MARKER + "-redhat-00001";
+    final List<Artifact> lst = new ArrayList<>();
+    PatchedArtifact patched;
+    Artifact sameBytes;
+    Artifact sameArtifact;
+
+    @Test
+    public void test() throws Exception {
+        runTest();
+    }
+
+    @Override
+    protected List<Artifact> setup(Path root, Path patchedRoot) throws Exception {
+        patched = TestUtils.createPatchedArtifact(root, patchedRoot, "org.foo.bar", "art1", "1.0", null, "jar");
+        lst.add(patched);
+
+        // Same bytes under a new version.
+        sameBytes = TestUtils.createArtifact(root, "org.foo.bar", "art2", "2.0", null, "jar");
+        Files.write(root.resolve(sameBytes.getPath()), "art2".getBytes("UTF-8"));
+        Path newVersion = patchedRoot.resolve("org/foo/bar/art2/2.0.patch/art2-2.0.patch.jar");
+        Files.createDirectories(newVersion.getParent());
+        Files.write(newVersion, "art2".getBytes("UTF-8"));
+        Files.write(newVersion.resolveSibling("art2-2.0.patch.pom"), "<project/>".getBytes("UTF-8"));
+        lst.add(sameBytes);
+
+        // The same artifact.
+        sameArtifact = TestUtils.createArtifact(root, "org.foo.bar", "art3", "3.0", null, "jar");
+        Files.write(root.resolve(sameArtifact.getPath()), "art3".getBytes("UTF-8"));
+        Files.createDirectories(patchedRoot.resolve(sameArtifact.getPath()).getParent());
+        Files.copy(root.resolve(sameArtifact.getPath()), patchedRoot.resolve(sameArtifact.getPath()));
+        lst.add(sameArtifact);
+
+        TestUtils.buildFP(root, producer1, fpVersion, lst);
+        System.setProperty(Patcher.FP_PATHS, "org/foo/bar/" + producer1);
+        return lst;
+    }
+
+    @Override
+    protected void done(Path outputRepo) throws Exception {
+        Set<String> ids = new HashSet<>();
+        ids.add("org.foo.bar:" + producer1 + ":" + expectedFpversion);
+        TestUtils.checkPatches(outputRepo.resolve("patches.xml"), ids);
+
+        Path mavenRepo = outputRepo.resolve("maven-repository");
+        Assert.assertFalse(Files.exists(mavenRepo.resolve(patched.getPath())));
+        Assert.assertTrue(Files.exists(mavenRepo.resolve(sameBytes.getPath())));
+        // The new version of a skipped artifact is not added.
+        Assert.assertFalse(Files.exists(mavenRepo.resolve("org/foo/bar/art2/2.0.patch")));
+        Assert.assertTrue(Files.exists(mavenRepo.resolve(sameArtifact.getPath())));
+
+        Path fpPath = mavenRepo.resolve(ArtifactUtils.convertToPath(ids.iterator().next() + "::zip"));
+        Path tmp = Files.createTempDirectory("fp");
+        try {
+            ZipUtils.unzip(fpPath, tmp);
+            Map<String, String> versions = ArtifactUtils.readProperties(tmp.resolve("resources").resolve("wildfly").resolve("artifact-versions.properties"));
+            Assert.assertEquals(patched.getPatchedEntry()[1], versions.get(patched.getEntry()[0]));
+            Assert.assertEquals(sameBytes.getEntry()[1], versions.get(sameBytes.getEntry()[0]));
+            Assert.assertEquals(sameArtifact.getEntry()[1], versions.get(sameArtifact.getEntry()[0]));
+        } finally {
+            IoUtils.recursiveDelete(tmp);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.galleon.maven.repo.patcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+
+/**
+ * Same checks as MetricsMainTestCase, the phase metrics being also emitted as
+ * JFR events. Compiled and run when building with Java 11 or newer.
+ *
+ * @author jdenise
+ */
+public class JfrMetricsTestCase extends MetricsMainTestCase {
+
+    @Override
+    protected void generate(Path zippedRepo, Path zippedPatchedRepo, Path output) throws Exception {
+        Path jfr = zippedRepo.resolveSibling("metrics.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.wildfly.galleon.maven.repo.patcher.Phase");
+            recording.start();
+            super.generate(zippedRepo, zippedPatchedRepo, output);
+            recording.stop();
+            recording.dump(jfr);
+        }
+
+        Set<String> phases = new HashSet<>();
+        long written = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(jfr)) {
+            phases.add(event.getString("phase"));
+            if (PatcherListener.Phase.WRITE_OUTPUT.name().equals(event.getString("phase"))) {
+                written = event.getLong("bytesWritten");
+            }
+        }
+        Assert.assertEquals(PatcherListener.Phase.values().length, phases.size());
+        // The output plus the new artifacts installed in the extracted repository.
+        Assert.assertTrue(written >= Files.size(output));
+    }
+}